@@ -0,0 +1,93 @@
+package src.com.sstv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the decoder's detection and demodulation kernels, and of VIS hunting on a signal-free input. The {@code samples} counter is samples/sec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class DecoderBenchmark {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int WINDOW = 1323;      // One 30 ms VIS bit
+    private static final double SCAN_MS = 345.6; // One Scottie DX colour scan
+
+    private SSTVDecoder decoder;
+    private float[] window;
+    private int scanSamples;
+    private int[] pixels;
+    private SSTVDecoder hunter;
+    private byte[] noise;
+
+    @Setup
+    public void setup() throws IOException {
+        decoder = new SSTVDecoder(new DecoderListener() {});
+
+        window = new float[WINDOW];
+        for(int i = 0; i < WINDOW; i++) {
+            window[i] = (float)Math.sin(2 * Math.PI * 1200 * i / SAMPLE_RATE);
+        }
+
+        // One colour scan of the test card's hue row, kept in the decoder buffer for every invocation
+        int[] row = TestCard.create().getRGB(0, TestCard.HEIGHT - 1, TestCard.WIDTH, 1, null, 0, TestCard.WIDTH);
+        double[] freqs = new double[row.length];
+        for(int x = 0; x < row.length; x++) {
+            freqs[x] = SSTVEncoder.rgbToFrequency((row[x] >> 8) & 0xFF);
+        }
+        PcmBuffer scan = new PcmBuffer(1 << 16);
+        new SSTVImageEncoder().renderSweep(scan, freqs, SCAN_MS);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scan.drainTo(PcmSink.of(out));
+        byte[] pcm = out.toByteArray();
+        decoder.audioBuffer.write(pcm, 0, pcm.length);
+        scanSamples = decoder.audioBuffer.size();
+        pixels = new int[TestCard.WIDTH];
+
+        // One second of noise: the decoder hunts for a VIS header and never finds one
+        hunter = new SSTVDecoder(new DecoderListener() {});
+        noise = new byte[SAMPLE_RATE * 2];
+        Random random = new Random(1);
+        for(int i = 0; i < SAMPLE_RATE; i++) {
+            short sample = (short)(random.nextGaussian() * 8000);
+            noise[2 * i] = (byte)sample;
+            noise[2 * i + 1] = (byte)(sample >> 8);
+        }
+    }
+
+    @Benchmark
+    public double calculatePower(SampleCounter counter) {
+        counter.samples += WINDOW;
+        return decoder.calculatePower(window, WINDOW, 1200);
+    }
+
+    @Benchmark
+    public int[] decodeScan(SampleCounter counter) {
+        decoder.decodeScan(0, scanSamples, pixels, TestCard.WIDTH);
+        counter.samples += scanSamples;
+        return pixels;
+    }
+
+    @Benchmark
+    public SSTVDecoder huntIdle(SampleCounter counter) {
+        hunter.processAudio(noise, 0, noise.length);
+        counter.samples += SAMPLE_RATE;
+        return hunter;
+    }
+}
@@ -0,0 +1,64 @@
+package src.com.sstv;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Synthesis throughput of the encoder primitives and image conversion. The {@code samples} counter is samples/sec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class EncoderBenchmark {
+    private SSTVImageEncoder encoder;
+    private PcmBuffer buffer;
+    private double[] freqs;
+    private BufferedImage photo; // 12 MP test card in the layout ImageIO returns for JPEG photos
+
+    @Setup
+    public void setup() {
+        encoder = new SSTVImageEncoder();
+        buffer = new PcmBuffer(1 << 19);
+        int[] row = TestCard.create().getRGB(0, TestCard.HEIGHT - 1, TestCard.WIDTH, 1, null, 0, TestCard.WIDTH);
+        freqs = new double[row.length];
+        for(int x = 0; x < row.length; x++) {
+            freqs[x] = SSTVEncoder.rgbToFrequency((row[x] >> 8) & 0xFF);
+        }
+        photo = new BufferedImage(4000, 3000, BufferedImage.TYPE_3BYTE_BGR);
+        photo.getGraphics().drawImage(TestCard.create(), 0, 0, photo.getWidth(), photo.getHeight(), null);
+    }
+
+    @Benchmark
+    public int renderTone(SampleCounter counter) {
+        buffer.clear();
+        encoder.renderTone(buffer, 1200, 100.0, true);
+        counter.samples += buffer.size();
+        return buffer.size();
+    }
+
+    @Benchmark
+    public int renderSweep(SampleCounter counter) {
+        buffer.clear();
+        encoder.renderSweep(buffer, freqs, 345.6);
+        counter.samples += buffer.size();
+        return buffer.size();
+    }
+
+    @Benchmark
+    public ScanFrame convertPhoto() {
+        return ScanFrame.of(photo, src.com.sstv.Mode.SCOTTIE_DX);
+    }
+}
@@ -0,0 +1,91 @@
+package src.com.sstv;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding a noisy 8-minute recording of seven back-to-back transmissions: one {@link SSTVDecoder} walking it
+ * in order against the {@link RecordingDecoder} on 1, 2 and 4 threads. The scaling depends on the cores of the
+ * machine, so compare {@code recording} to {@code sequential} on the hardware at hand.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class RecordingBenchmark {
+    private static final int INPUT_RATE = 44100;
+    private static final double GAP_SECONDS = 2;
+
+    @Param({"1", "2", "4"})
+    private int threads;
+
+    @Param({"11025", "44100"})
+    private int sampleRate;
+
+    private ByteBuffer pcm;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        src.com.sstv.Mode[] modes = {
+            src.com.sstv.Mode.ROBOT_36, src.com.sstv.Mode.MARTIN_2, src.com.sstv.Mode.SCOTTIE_1, src.com.sstv.Mode.ROBOT_36,
+            src.com.sstv.Mode.PD_120, src.com.sstv.Mode.MARTIN_2, src.com.sstv.Mode.ROBOT_36
+        };
+        BufferedImage card = TestCard.create();
+        Random random = new Random(5);
+        int gap = (int)(GAP_SECONDS * INPUT_RATE);
+        short[][] frames = new short[modes.length][];
+        int total = gap;
+        for(int i = 0; i < modes.length; i++) {
+            ByteBuffer frame = ByteBuffer.wrap(new SSTVImageEncoder(modes[i]).encodeToArray(card)).order(ByteOrder.LITTLE_ENDIAN);
+            frames[i] = new short[frame.remaining() / 2];
+            frame.asShortBuffer().get(frames[i]);
+            total += frames[i].length + gap;
+        }
+
+        // Transmissions at half scale in white noise, separated by noise only
+        pcm = ByteBuffer.allocate(2 * total).order(ByteOrder.LITTLE_ENDIAN);
+        for(int i = 0; i <= modes.length; i++) {
+            for(int n = 0; n < gap; n++) pcm.putShort((short)(random.nextGaussian() * 2000));
+            if(i == modes.length) break;
+            for(short sample : frames[i]) pcm.putShort((short)(sample * 0.5 + random.nextGaussian() * 2000));
+        }
+        pcm.flip();
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public List<BufferedImage> sequential() {
+        return SSTVDecoder.decode(pcm.duplicate(), INPUT_RATE, sampleRate);
+    }
+
+    @Benchmark
+    public List<RecordingDecoder.Reception> recording() throws InterruptedException {
+        return RecordingDecoder.decode(pcm.duplicate(), INPUT_RATE, sampleRate, executor);
+    }
+}
@@ -0,0 +1,62 @@
+package src.com.sstv;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full-frame cost of encoding and decoding the 320x256 test card in several modes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+    @Param({"SCOTTIE_DX", "MARTIN_2", "ROBOT_36", "PD_120"})
+    private String mode;
+
+    private src.com.sstv.Mode sstvMode;
+    private BufferedImage card;
+    private byte[] pcm;
+
+    @Setup
+    public void setup() {
+        sstvMode = src.com.sstv.Mode.valueOf(mode);
+        card = TestCard.create();
+        pcm = new SSTVImageEncoder(sstvMode).encodeToArray(card);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return new SSTVImageEncoder(sstvMode).encodeToArray(card);
+    }
+
+    @Benchmark
+    public byte[] encodeParallel() {
+        return new SSTVImageEncoder(sstvMode).encodeParallel(card);
+    }
+
+    @Benchmark
+    public List<BufferedImage> decode() {
+        return SSTVDecoder.decode(ByteBuffer.wrap(pcm));
+    }
+
+    @Benchmark
+    public List<BufferedImage> encodeDecode() {
+        return SSTVDecoder.decode(ByteBuffer.wrap(new SSTVImageEncoder(sstvMode).encodeToArray(card)));
+    }
+}
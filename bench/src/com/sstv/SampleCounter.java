@@ -0,0 +1,21 @@
+package src.com.sstv;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary JMH result reporting audio samples processed per second.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class SampleCounter {
+    public long samples;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        samples = 0;
+    }
+}
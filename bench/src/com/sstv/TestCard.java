@@ -0,0 +1,36 @@
+package src.com.sstv;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Deterministic 320x256 test card used by the benchmarks: colour bars over a grey ramp and a hue sweep.
+ */
+final class TestCard {
+    static final int WIDTH = 320;
+    static final int HEIGHT = 256;
+
+    private static final int[] BARS = {
+        0xFFFFFF, 0xFFFF00, 0x00FFFF, 0x00FF00, 0xFF00FF, 0xFF0000, 0x0000FF, 0x000000
+    };
+
+    private TestCard() {}
+
+    static BufferedImage create() {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for(int y = 0; y < HEIGHT; y++) {
+            for(int x = 0; x < WIDTH; x++) {
+                int rgb;
+                if(y < HEIGHT / 2) {
+                    rgb = BARS[x * BARS.length / WIDTH];
+                } else if(y < HEIGHT * 3 / 4) {
+                    int grey = x * 255 / (WIDTH - 1);
+                    rgb = (grey << 16) | (grey << 8) | grey;
+                } else {
+                    rgb = java.awt.Color.HSBtoRGB(x / (float)WIDTH, 1f, 1f) & 0xFFFFFF;
+                }
+                img.setRGB(x, y, rgb);
+            }
+        }
+        return img;
+    }
+}
@@ -0,0 +1,140 @@
+package src.com.sstv;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free handoff of audio blocks from one capture thread to one decoding thread.
+ * <p>
+ * The ring owns a fixed pool of byte blocks, allocated once. The producer claims the next free block, fills
+ * it and publishes it with its length; the consumer peeks the oldest published block, decodes it and
+ * releases it back to the pool. Each side only ever writes its own index, once per block, so neither
+ * side takes a lock or allocates, and a stalled consumer can never block the producer: a full
+ * ring is reported by {@link #claim()} returning null, leaving it to the producer to drop or wait.
+ * <p>
+ * Exactly one thread may call the producer methods and one thread the consumer methods at a time.
+ */
+public final class CaptureRing {
+    private final byte[][] blocks;
+    private final int[] lengths;         // Bytes published in each block
+    private final AtomicLong head = new AtomicLong(); // Blocks released, written by the consumer only
+    private final AtomicLong tail = new AtomicLong(); // Blocks published, written by the producer only
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+
+    /**
+     * Creates a ring
+     * @param blockCount number of blocks in the pool
+     * @param blockBytes size of every block in bytes
+     */
+    public CaptureRing(int blockCount, int blockBytes) {
+        if(blockCount < 1 || blockBytes < 1) throw new IllegalArgumentException("Invalid ring of " + blockCount + " x " + blockBytes + " bytes");
+        this.blocks = new byte[blockCount][blockBytes];
+        this.lengths = new int[blockCount];
+    }
+
+    public int capacity() { return blocks.length; }
+    public int blockBytes() { return blocks[0].length; }
+
+    /**
+     * Gets the number of published blocks not yet released
+     * @return blocks waiting for the consumer
+     */
+    public int size() {
+        return (int)(tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Producer: gets the next free block to fill. Claiming again before publishing returns the same block.
+     * @return a block owned by the producer until {@link #publish(int)}, or null if the ring is full
+     */
+    public byte[] claim() {
+        long t = tail.get();
+        if(t - head.get() == blocks.length) return null;
+        return blocks[(int)(t % blocks.length)];
+    }
+
+    /**
+     * Producer: waits until a block is free, see {@link #claim()}
+     * @return a block owned by the producer until {@link #publish(int)}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public byte[] awaitClaim() throws InterruptedException {
+        byte[] block;
+        while((block = claim()) == null) {
+            waitingProducer = Thread.currentThread();
+            if(claim() == null) LockSupport.park(this); // Checked again after registering, so no wake-up is lost
+            waitingProducer = null;
+            if(Thread.interrupted()) throw new InterruptedException();
+        }
+        return block;
+    }
+
+    /**
+     * Producer: hands the claimed block to the consumer
+     * @param length bytes filled in the block
+     */
+    public void publish(int length) {
+        long t = tail.get();
+        lengths[(int)(t % blocks.length)] = length;
+        tail.set(t + 1); // Block contents and length become visible with the new tail
+        Thread consumer = waitingConsumer;
+        if(consumer != null) LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Consumer: gets the oldest published block without releasing it
+     * @return the block, or null if none is waiting
+     */
+    public byte[] peek() {
+        long h = head.get();
+        if(h == tail.get()) return null;
+        return blocks[(int)(h % blocks.length)];
+    }
+
+    /**
+     * Consumer: waits until a block is published, see {@link #peek()}
+     * @return the oldest published block
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public byte[] take() throws InterruptedException {
+        byte[] block;
+        while((block = peek()) == null) {
+            waitingConsumer = Thread.currentThread();
+            if(peek() == null) LockSupport.park(this);
+            waitingConsumer = null;
+            if(Thread.interrupted()) throw new InterruptedException();
+        }
+        return block;
+    }
+
+    /**
+     * Consumer: gets the length of the block returned by {@link #peek()}
+     * @return bytes published in the oldest block
+     */
+    public int peekLength() {
+        return lengths[(int)(head.get() % blocks.length)];
+    }
+
+    /**
+     * Consumer: returns the oldest block to the pool
+     */
+    public void release() {
+        long h = head.get();
+        if(h == tail.get()) throw new IllegalStateException("Nothing to release");
+        head.set(h + 1);
+        Thread producer = waitingProducer;
+        if(producer != null) LockSupport.unpark(producer);
+    }
+
+    /**
+     * Consumer: releases every published block
+     */
+    public void clear() {
+        while(peek() != null) release();
+    }
+}
@@ -40,9 +40,57 @@ public class Color {
      * @return Array [Y, Cb, Cr]
      */
     public double[] toYCbCr() {
-        double y  =  0.299 * r + 0.587 * g + 0.114 * b;
-        double cb = -0.168736 * r - 0.331264 * g + 0.5 * b + 128;
-        double cr =  0.5 * r - 0.418688 * g - 0.081312 * b + 128;
-        return new double[]{y, cb, cr};
+        return new double[]{luma(r, g, b), blueChroma(r, g, b), redChroma(r, g, b)};
+    }
+
+    /**
+     * Luma (Y) of an RGB triple (components may be fractional, e.g. averaged), without allocating a color
+     * @param r red
+     * @param g green
+     * @param b blue
+     * @return Y, 0-255
+     */
+    public static double luma(double r, double g, double b) {
+        return 0.299 * r + 0.587 * g + 0.114 * b;
+    }
+
+    /**
+     * Blue-difference chroma (Cb) of an RGB triple, without allocating a color
+     * @param r red
+     * @param g green
+     * @param b blue
+     * @return Cb, centred on 128
+     */
+    public static double blueChroma(double r, double g, double b) {
+        return -0.168736 * r - 0.331264 * g + 0.5 * b + 128;
+    }
+
+    /**
+     * Red-difference chroma (Cr) of an RGB triple, without allocating a color
+     * @param r red
+     * @param g green
+     * @param b blue
+     * @return Cr, centred on 128
+     */
+    public static double redChroma(double r, double g, double b) {
+        return 0.5 * r - 0.418688 * g - 0.081312 * b + 128;
+    }
+
+    /**
+     * Converts YCbCr (as produced by {@link #toYCbCr()}) back to RGB.
+     * @param y luma
+     * @param cb blue-difference chroma, centred on 128
+     * @param cr red-difference chroma, centred on 128
+     * @return packed decimal value 0xRRGGBB, each channel clamped to 0-255
+     */
+    public static int rgbFromYCbCr(double y, double cb, double cr) {
+        int r = clamp(y + 1.402 * (cr - 128));
+        int g = clamp(y - 0.344136 * (cb - 128) - 0.714136 * (cr - 128));
+        int b = clamp(y + 1.772 * (cb - 128));
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(double value) {
+        return (int)Math.max(0, Math.min(255, Math.round(value)));
     }
 }
\ No newline at end of file
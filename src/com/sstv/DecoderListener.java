@@ -0,0 +1,25 @@
+package src.com.sstv;
+
+/**
+ * Receives the output of an {@link SSTVDecoder}.
+ * Callbacks run on the thread that feeds audio into the decoder.
+ */
+public interface DecoderListener {
+    /**
+     * Called when a VIS header has been recognized and a new image begins
+     * @param mode mode announced by the VIS header, gives the image size
+     */
+    default void frameStarted(Mode mode) {}
+
+    /**
+     * Called for every fully decoded scan line
+     * @param y line index
+     * @param rgb packed 0xRRGGBB pixels, only valid for the duration of the call
+     */
+    default void lineDecoded(int y, int[] rgb) {}
+
+    /**
+     * Called when the last line of an image has been decoded, or the input ended mid-image
+     */
+    default void frameCompleted() {}
+}
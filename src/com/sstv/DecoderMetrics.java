@@ -0,0 +1,311 @@
+package src.com.sstv;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of one {@link SSTVDecoder}, cheap enough to stay on in production.
+ * <p>
+ * The decoder updates them from its own thread; any other thread may read them at any time, either as live
+ * attributes (also exported through JMX with {@link #register(String)}) or as a consistent-enough
+ * {@link #snapshot()}. Counters are {@link LongAdder}s and stage timings are gathered in plain fields by the
+ * decoder and added once per chunk, so reading never slows the decoder down.
+ * <p>
+ * The signal-to-noise estimate of a frame comes from its sync pulses: the share of each pulse window's energy
+ * at 1200 Hz is signal, the rest is noise across the whole band.
+ */
+public class DecoderMetrics implements DecoderMetricsMXBean {
+    private static final int RECENT_FRAMES = 16; // Frame reports kept for snapshots
+
+    /**
+     * Decoding stages that are timed separately
+     */
+    public enum Stage { RESAMPLE, VIS, LINE }
+
+    private final int inputRate;
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    private final LongAccumulator highWater = new LongAccumulator(Math::max, 0);
+    private volatile int bufferDepth;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder overruns = new LongAdder();
+    private final LongAdder visCandidates = new LongAdder();
+    private final LongAdder visFailures = new LongAdder();
+    private final LongAdder framesStarted = new LongAdder();
+    private final LongAdder framesCompleted = new LongAdder();
+    private final LongAdder framesLost = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder syncLocks = new LongAdder();
+    private final LongAdder syncMisses = new LongAdder();
+    private final LongAdder syncSlips = new LongAdder();
+    private final DoubleAdder syncPurity = new DoubleAdder(); // Summed over the sync locks
+    private final Deque<Frame> recent = new ArrayDeque<>(RECENT_FRAMES); // Guarded by itself
+    private volatile Frame lastFrame;
+
+    /**
+     * Creates empty metrics
+     * @param inputRate sample rate of the decoder input in Hz, to tell audio time from sample counts
+     */
+    public DecoderMetrics(int inputRate) {
+        this.inputRate = inputRate;
+        for(int i = 0; i < stageNanos.length; i++) stageNanos[i] = new LongAdder();
+    }
+
+    /**
+     * Exports these metrics through the platform MBean server
+     * @param name name of the decoder, quoted into the object name
+     * @return object name the metrics were registered under
+     * @throws JMException if the name is taken or the metrics cannot be registered
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("src.com.sstv:type=SSTVDecoder,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * Removes metrics exported with {@link #register(String)}
+     * @param objectName name they were registered under
+     */
+    public static void unregister(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already gone
+        }
+    }
+
+    /**
+     * Takes a snapshot of every counter
+     * @return current values, together with reports of the most recent frames
+     */
+    public Snapshot snapshot() {
+        List<Frame> frames;
+        synchronized (recent) {
+            frames = new ArrayList<>(recent);
+        }
+        return new Snapshot(this, frames);
+    }
+
+    // Updates from the decoder thread
+
+    void chunk(int inputSamples, int depth) {
+        samples.add(inputSamples);
+        bufferDepth = depth;
+        highWater.accumulate(depth);
+    }
+
+    void time(Stage stage, long nanos) {
+        if(nanos > 0) stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    void dropped(int inputSamples) { dropped.add(inputSamples); }
+    void overrun() { overruns.increment(); }
+
+    void visCandidate(boolean failed) {
+        visCandidates.increment();
+        if(failed) visFailures.increment();
+    }
+
+    void frameStarted() { framesStarted.increment(); }
+    void line() { lines.increment(); }
+    void syncLocked(double purity) { syncLocks.increment(); syncPurity.add(purity); }
+    void syncMissed() { syncMisses.increment(); }
+    void syncSlipped() { syncSlips.increment(); }
+
+    void frameEnded(Frame frame) {
+        (frame.isLost() ? framesLost : framesCompleted).increment();
+        lastFrame = frame;
+        synchronized (recent) {
+            if(recent.size() == RECENT_FRAMES) recent.removeFirst();
+            recent.addLast(frame);
+        }
+    }
+
+    // Live attributes
+
+    @Override public long getSamplesProcessed() { return samples.sum(); }
+
+    @Override
+    public double getSamplesPerSecond() {
+        long nanos = busyNanos();
+        return nanos == 0 ? 0 : samples.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public double getRealTimeFactor() {
+        return getSamplesPerSecond() / inputRate;
+    }
+
+    @Override public double getResampleMillis() { return stageNanos[Stage.RESAMPLE.ordinal()].sum() / 1e6; }
+    @Override public double getVisMillis() { return stageNanos[Stage.VIS.ordinal()].sum() / 1e6; }
+    @Override public double getLineMillis() { return stageNanos[Stage.LINE.ordinal()].sum() / 1e6; }
+    @Override public int getBufferDepth() { return bufferDepth; }
+    @Override public int getBufferHighWater() { return (int)highWater.get(); }
+    @Override public long getDroppedSamples() { return dropped.sum(); }
+    @Override public long getOverruns() { return overruns.sum(); }
+    @Override public long getVisCandidates() { return visCandidates.sum(); }
+    @Override public long getVisFailures() { return visFailures.sum(); }
+    @Override public long getFramesStarted() { return framesStarted.sum(); }
+    @Override public long getFramesCompleted() { return framesCompleted.sum(); }
+    @Override public long getFramesLost() { return framesLost.sum(); }
+    @Override public long getLinesDecoded() { return lines.sum(); }
+    @Override public long getSyncLocks() { return syncLocks.sum(); }
+    @Override public long getSyncMisses() { return syncMisses.sum(); }
+    @Override public long getSyncSlips() { return syncSlips.sum(); }
+
+    @Override
+    public double getMeanSyncPurity() {
+        long locks = syncLocks.sum();
+        return locks == 0 ? Double.NaN : syncPurity.sum() / locks;
+    }
+
+    @Override
+    public int getLastFrameLines() {
+        Frame frame = lastFrame;
+        return frame == null ? 0 : frame.getLines();
+    }
+
+    @Override
+    public double getLastFrameSnrDb() {
+        Frame frame = lastFrame;
+        return frame == null ? Double.NaN : frame.getSnrDb();
+    }
+
+    private long busyNanos() {
+        long nanos = 0;
+        for(LongAdder stage : stageNanos) nanos += stage.sum();
+        return nanos;
+    }
+
+    /**
+     * Report of one received frame
+     */
+    public static final class Frame {
+        private final Mode mode;
+        private final int lines;
+        private final int syncLocks;
+        private final int syncMisses;
+        private final int syncSlips;
+        private final double snrDb;
+        private final boolean lost;
+
+        Frame(Mode mode, int lines, int syncLocks, int syncMisses, int syncSlips, double snrDb, boolean lost) {
+            this.mode = mode;
+            this.lines = lines;
+            this.syncLocks = syncLocks;
+            this.syncMisses = syncMisses;
+            this.syncSlips = syncSlips;
+            this.snrDb = snrDb;
+            this.lost = lost;
+        }
+
+        public Mode getMode() { return mode; }
+        /** @return transmitted lines decoded, out of {@link Mode#getLineCount()} */
+        public int getLines() { return lines; }
+        public int getSyncLocks() { return syncLocks; }
+        public int getSyncMisses() { return syncMisses; }
+        public int getSyncSlips() { return syncSlips; }
+        /** @return signal-to-noise ratio estimated from the sync pulses in dB, NaN without any */
+        public double getSnrDb() { return snrDb; }
+        /** @return true if the frame was given up after losing the sync pulses */
+        public boolean isLost() { return lost; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d/%d lines, %d syncs, %d missed, %d slips, SNR %.1f dB%s",
+                mode.getDisplayName(), lines, mode.getLineCount(), syncLocks, syncMisses, syncSlips, snrDb,
+                lost ? ", lost" : "");
+        }
+    }
+
+    /**
+     * Point-in-time copy of the metrics
+     */
+    public static final class Snapshot implements DecoderMetricsMXBean {
+        private final long samplesProcessed;
+        private final double samplesPerSecond;
+        private final double realTimeFactor;
+        private final double resampleMillis, visMillis, lineMillis;
+        private final int bufferDepth, bufferHighWater;
+        private final long droppedSamples, overruns;
+        private final long visCandidates, visFailures;
+        private final long framesStarted, framesCompleted, framesLost, linesDecoded;
+        private final long syncLocks, syncMisses, syncSlips;
+        private final double meanSyncPurity;
+        private final int lastFrameLines;
+        private final double lastFrameSnrDb;
+        private final List<Frame> recentFrames;
+
+        Snapshot(DecoderMetricsMXBean source, List<Frame> recentFrames) {
+            this.samplesProcessed = source.getSamplesProcessed();
+            this.samplesPerSecond = source.getSamplesPerSecond();
+            this.realTimeFactor = source.getRealTimeFactor();
+            this.resampleMillis = source.getResampleMillis();
+            this.visMillis = source.getVisMillis();
+            this.lineMillis = source.getLineMillis();
+            this.bufferDepth = source.getBufferDepth();
+            this.bufferHighWater = source.getBufferHighWater();
+            this.droppedSamples = source.getDroppedSamples();
+            this.overruns = source.getOverruns();
+            this.visCandidates = source.getVisCandidates();
+            this.visFailures = source.getVisFailures();
+            this.framesStarted = source.getFramesStarted();
+            this.framesCompleted = source.getFramesCompleted();
+            this.framesLost = source.getFramesLost();
+            this.linesDecoded = source.getLinesDecoded();
+            this.syncLocks = source.getSyncLocks();
+            this.syncMisses = source.getSyncMisses();
+            this.syncSlips = source.getSyncSlips();
+            this.meanSyncPurity = source.getMeanSyncPurity();
+            this.lastFrameLines = source.getLastFrameLines();
+            this.lastFrameSnrDb = source.getLastFrameSnrDb();
+            this.recentFrames = Collections.unmodifiableList(recentFrames);
+        }
+
+        @Override public long getSamplesProcessed() { return samplesProcessed; }
+        @Override public double getSamplesPerSecond() { return samplesPerSecond; }
+        @Override public double getRealTimeFactor() { return realTimeFactor; }
+        @Override public double getResampleMillis() { return resampleMillis; }
+        @Override public double getVisMillis() { return visMillis; }
+        @Override public double getLineMillis() { return lineMillis; }
+        @Override public int getBufferDepth() { return bufferDepth; }
+        @Override public int getBufferHighWater() { return bufferHighWater; }
+        @Override public long getDroppedSamples() { return droppedSamples; }
+        @Override public long getOverruns() { return overruns; }
+        @Override public long getVisCandidates() { return visCandidates; }
+        @Override public long getVisFailures() { return visFailures; }
+        @Override public long getFramesStarted() { return framesStarted; }
+        @Override public long getFramesCompleted() { return framesCompleted; }
+        @Override public long getFramesLost() { return framesLost; }
+        @Override public long getLinesDecoded() { return linesDecoded; }
+        @Override public long getSyncLocks() { return syncLocks; }
+        @Override public long getSyncMisses() { return syncMisses; }
+        @Override public long getSyncSlips() { return syncSlips; }
+        @Override public double getMeanSyncPurity() { return meanSyncPurity; }
+        @Override public int getLastFrameLines() { return lastFrameLines; }
+        @Override public double getLastFrameSnrDb() { return lastFrameSnrDb; }
+
+        /** @return reports of the most recent frames, oldest first */
+        public List<Frame> getRecentFrames() { return recentFrames; }
+
+        @Override
+        public String toString() {
+            return String.format("%d samples at %.0fx real time (resample %.0f ms, VIS %.0f ms, lines %.0f ms), "
+                + "buffer %d/%d, %d dropped, %d overruns, VIS %d/%d failed, frames %d started/%d completed/%d lost, "
+                + "%d lines, syncs %d locked/%d missed/%d slips, purity %.2f, last SNR %.1f dB",
+                samplesProcessed, realTimeFactor, resampleMillis, visMillis, lineMillis, bufferDepth, bufferHighWater,
+                droppedSamples, overruns, visFailures, visCandidates, framesStarted, framesCompleted, framesLost,
+                linesDecoded, syncLocks, syncMisses, syncSlips, meanSyncPurity, lastFrameSnrDb);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package src.com.sstv;
+
+/**
+ * Management interface of an {@link SSTVDecoder}'s {@link DecoderMetrics}, as seen through JMX.
+ * Every attribute is a plain number, so it shows up in any JMX console.
+ */
+public interface DecoderMetricsMXBean {
+    /** @return input samples fed to the decoder */
+    long getSamplesProcessed();
+    /** @return input samples decoded per second of decoding time */
+    double getSamplesPerSecond();
+    /** @return seconds of audio decoded per second of decoding time, above 1 when faster than real time */
+    double getRealTimeFactor();
+
+    /** @return time spent resampling the input in milliseconds */
+    double getResampleMillis();
+    /** @return time spent hunting for VIS headers in milliseconds */
+    double getVisMillis();
+    /** @return time spent decoding lines in milliseconds */
+    double getLineMillis();
+
+    /** @return samples in the decoder buffer once the last chunk was added */
+    int getBufferDepth();
+    /** @return most samples the decoder buffer ever held */
+    int getBufferHighWater();
+    /** @return input samples discarded before reaching the decoder */
+    long getDroppedSamples();
+    /** @return times the sound card buffer or the capture ring was found full, so audio may have been lost */
+    long getOverruns();
+
+    /** @return runs of VIS checks that found a leader and start bit, each ending in a header or a failure */
+    long getVisCandidates();
+    /** @return of those, how many never passed the data, parity and stop bit checks */
+    long getVisFailures();
+    long getFramesStarted();
+    /** @return frames received up to their last line */
+    long getFramesCompleted();
+    /** @return frames given up after losing the sync pulses */
+    long getFramesLost();
+    long getLinesDecoded();
+
+    /** @return sync pulses found where the line timing predicted them */
+    long getSyncLocks();
+    /** @return lines decoded without finding their sync pulse */
+    long getSyncMisses();
+    /** @return times the line timing was lost and found again a whole line search away */
+    long getSyncSlips();
+    /** @return mean share of the sync window energy held by the 1200 Hz tone, over the syncs found */
+    double getMeanSyncPurity();
+
+    /** @return lines decoded in the last finished frame */
+    int getLastFrameLines();
+    /** @return signal-to-noise ratio of the last finished frame in dB, estimated from its sync pulses */
+    double getLastFrameSnrDb();
+}
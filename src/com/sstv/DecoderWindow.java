@@ -0,0 +1,44 @@
+package src.com.sstv;
+
+import javax.swing.*;
+
+/**
+ * Swing consumer that shows the image being received in a preview window.
+ */
+public class DecoderWindow implements DecoderListener {
+    private final JFrame frame;
+    private final PreviewPanel previewPanel;
+    private final String title;
+
+    public DecoderWindow() {
+        this("SSTV Decoder");
+    }
+
+    /**
+     * Creates a preview window
+     * @param title window title, followed by the received mode while a frame comes in
+     */
+    public DecoderWindow(String title) {
+        this.title = title;
+        previewPanel = new PreviewPanel(320, 256, 2);         // Initialize preview panel
+        frame = new JFrame(title);                            // Set up main window
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.add(previewPanel);
+        frame.pack();
+        frame.setVisible(true);
+    }
+
+    @Override
+    public void frameStarted(Mode mode) {
+        previewPanel.resetImage(mode.getWidth(), mode.getHeight());
+        SwingUtilities.invokeLater(() -> {
+            frame.setTitle(title + " - " + mode.getDisplayName());
+            frame.pack(); // Follow the resolution of the received mode
+        });
+    }
+
+    @Override
+    public void lineDecoded(int y, int[] rgb) {
+        previewPanel.setLine(y, rgb);
+    }
+}
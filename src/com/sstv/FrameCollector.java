@@ -0,0 +1,37 @@
+package src.com.sstv;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless decoder consumer that collects every received image.
+ */
+public class FrameCollector implements DecoderListener {
+    private final List<BufferedImage> images = new ArrayList<>();
+    private BufferedImage current;
+
+    @Override
+    public void frameStarted(Mode mode) {
+        current = new BufferedImage(mode.getWidth(), mode.getHeight(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Override
+    public void lineDecoded(int y, int[] rgb) {
+        if(current != null) current.setRGB(0, y, rgb.length, 1, rgb, 0, rgb.length);
+    }
+
+    @Override
+    public void frameCompleted() {
+        if(current != null) images.add(current);
+        current = null;
+    }
+
+    /**
+     * Gets the images completed so far, in reception order
+     * @return list of decoded images
+     */
+    public List<BufferedImage> getImages() {
+        return images;
+    }
+}
@@ -0,0 +1,209 @@
+package src.com.sstv;
+
+import java.util.Arrays;
+
+/**
+ * Quadrature FM discriminator that tracks the frequency of the signal continuously across a scan.
+ * <p>
+ * The signal is mixed down with a complex oscillator at the centre of the SSTV band and low-pass filtered
+ * by two cascaded boxcars whose nulls fall on the 2x centre-frequency mixing image. For every sample the
+ * phase step to the previous baseband sample is kept as its lag-1 autocorrelation (cross and dot products),
+ * accumulated into prefix sums. The mean frequency of any span is then read in O(1) with a single
+ * {@code atan2} of the summed products (the pulse-pair estimator), so a whole line costs one pass over
+ * its samples plus one {@code atan2} per pixel. The track is time-aligned with the input (the filter
+ * delay is compensated).
+ * <p>
+ * With scalar {@link SignalKernels} all of this is one fused loop per sample. With vector kernels it runs
+ * in stages over the whole range instead: mixing, then the two boxcars as a single triangular FIR filter,
+ * then the lag-1 products, each stage a vector at a time.
+ */
+public class FrequencyDemodulator {
+    private static final int QUARTER_TURN = 1 << 30; // 90 degrees in oscillator phase units
+
+    private final double sampleRate;
+    private final double centerFreq;
+    private final int increment;         // Local oscillator phase step
+    private final int length;            // Boxcar length in samples
+    private final int delay;             // Group delay of both boxcars together
+    private final double rotCos, rotSin; // Per-sample rotation of the local oscillator phasor
+    private final double[] history;      // Boxcar histories, four values per slot
+    private final SignalKernels kernels = SignalKernels.get();
+    private final float[] triangle;      // Both boxcars as one filter, for the staged path
+    private final float[] mixScratch = new float[kernels.getScratchLength()]; // Work space of the mixing kernel
+    private float[] samples = new float[0];               // Staged path: samples being demodulated
+    private float[] mixI = new float[0], mixQ = new float[0]; // Mixed samples after the filter warm-up zeros
+    private float[] baseI = new float[0], baseQ = new float[0]; // Filtered baseband after one zero sample
+    private float[] cross = new float[0], dot = new float[0];  // Lag-1 products per sample
+    private float[] input = new float[0];      // Fused path: samples being demodulated
+    private double[] crossSum = new double[1]; // Prefix sums of the lag-1 cross products
+    private double[] dotSum = new double[1];   // Prefix sums of the lag-1 dot products
+    private int count = 0;                     // Samples in the current track
+
+    /**
+     * Creates a demodulator centred between the black (1500 Hz) and white (2300 Hz) frequencies
+     * @param sampleRate sample rate in Hz
+     */
+    public FrequencyDemodulator(double sampleRate) {
+        this(sampleRate, (Mode.BLACK_FREQ + Mode.WHITE_FREQ) / 2);
+    }
+
+    /**
+     * Creates a demodulator
+     * @param sampleRate sample rate in Hz
+     * @param centerFreq mixing frequency in Hz
+     */
+    public FrequencyDemodulator(double sampleRate, double centerFreq) {
+        this.sampleRate = sampleRate;
+        this.centerFreq = centerFreq;
+        this.increment = new Oscillator(sampleRate).increment(centerFreq);
+        this.length = Math.max(2, (int)Math.round(sampleRate / (2 * centerFreq)));
+        this.delay = length - 1;
+        this.rotCos = Math.cos(2 * Math.PI * centerFreq / sampleRate);
+        this.rotSin = Math.sin(2 * Math.PI * centerFreq / sampleRate);
+        this.history = new double[length * 4];
+        this.triangle = new float[2 * length - 1];
+        for(int k = 0; k < triangle.length; k++) {
+            triangle[k] = Math.min(k + 1, triangle.length - k);
+        }
+    }
+
+    /**
+     * Gets how many samples past the end of a range the demodulator reads to produce aligned output
+     * @return filter group delay in samples
+     */
+    public int getDelay() {
+        return delay;
+    }
+
+    /**
+     * Tracks a range of the buffer. Samples up to {@link #getDelay()} before and after the range
+     * are used when available. The result is read with {@link #frequency(int, int)}.
+     * @param buffer audio source
+     * @param offset first sample of the range, relative to the head of the buffer
+     * @param count number of samples in the range
+     */
+    public void demodulate(SampleRingBuffer buffer, int offset, int count) {
+        int first = Math.max(0, offset - delay);
+        int last = Math.min(buffer.size(), offset + count + delay);
+        int span = last - first;
+        if(crossSum.length < count + 1) {
+            crossSum = new double[count + 1];
+            dotSum = new double[count + 1];
+        }
+        this.count = count;
+        int skip = offset + delay - first; // Outputs before this index only warm the filters up
+        crossSum[0] = 0;
+        dotSum[0] = 0;
+        if(kernels.isVectorized()) {
+            trackStaged(buffer, first, span, skip);
+        } else {
+            trackFused(buffer, first, span, skip);
+        }
+
+        // Samples too close to the end of the buffer for the filter to reach them repeat the last step
+        int filled = Math.max(0, Math.min(count, span - skip));
+        double lastCross = filled > 0 ? crossSum[filled] - crossSum[filled - 1] : 0;
+        double lastDot = filled > 0 ? dotSum[filled] - dotSum[filled - 1] : 1;
+        for(int out = filled; out < count; out++) {
+            crossSum[out + 1] = crossSum[out] + lastCross;
+            dotSum[out + 1] = dotSum[out] + lastDot;
+        }
+    }
+
+    // One pass doing everything per sample, the fastest form without SIMD
+    private void trackFused(SampleRingBuffer buffer, int first, int span, int skip) {
+        if(input.length < span) input = new float[span];
+        buffer.peek(first, input, span);
+        Arrays.fill(history, 0);
+
+        double sum1I = 0, sum1Q = 0, sum2I = 0, sum2Q = 0;
+        double prevI = 0, prevQ = 0;
+        double totalCross = 0, totalDot = 0;
+
+        // Local oscillator as a rotating phasor, started at the absolute phase of the first sample
+        int phase = (int)((long)first * increment);
+        double loCos = Oscillator.sine(phase + QUARTER_TURN), loSin = Oscillator.sine(phase);
+        int slot = 0;
+
+        for(int n = 0; n < span; n++) {
+            // Mix down to baseband
+            double x = input[n];
+            double i = x * loCos;
+            double q = -x * loSin;
+            double nextCos = loCos * rotCos - loSin * rotSin;
+            loSin = loSin * rotCos + loCos * rotSin;
+            loCos = nextCos;
+
+            // Two cascaded boxcars (running sums), histories interleaved in one array
+            int h = slot << 2;
+            sum1I += i - history[h];
+            sum1Q += q - history[h + 1];
+            sum2I += sum1I - history[h + 2];
+            sum2Q += sum1Q - history[h + 3];
+            history[h] = i;
+            history[h + 1] = q;
+            history[h + 2] = sum1I;
+            history[h + 3] = sum1Q;
+            if(++slot == length) slot = 0;
+
+            // Lag-1 autocorrelation: its angle is the phase step between consecutive baseband samples
+            double cross = prevI * sum2Q - prevQ * sum2I;
+            double dot = prevI * sum2I + prevQ * sum2Q;
+            prevI = sum2I;
+            prevQ = sum2Q;
+
+            int out = n - skip;
+            if(out < 0) continue;
+            totalCross += cross;
+            totalDot += dot;
+            crossSum[out + 1] = totalCross;
+            dotSum[out + 1] = totalDot;
+        }
+    }
+
+    // The same track a stage at a time over the whole range, so each stage runs on the vector kernels
+    private void trackStaged(SampleRingBuffer buffer, int first, int span, int skip) {
+        int warmUp = triangle.length - 1; // The filters start from silence, as in the fused loop
+        int lanes = kernels.getLanes();
+        int padded = (span + lanes - 1) / lanes * lanes; // Whole vectors only, the extra outputs are ignored
+        if(samples.length < padded) {
+            samples = new float[padded];
+            mixI = new float[warmUp + padded];
+            mixQ = new float[warmUp + padded];
+            baseI = new float[padded + 1];
+            baseQ = new float[padded + 1];
+            cross = new float[padded];
+            dot = new float[padded];
+        }
+        buffer.peek(first, samples, span);
+        Arrays.fill(samples, span, padded, 0);
+
+        kernels.mix(samples, padded, (int)((long)first * increment), increment, mixI, mixQ, warmUp, mixScratch);
+        kernels.fir(mixI, 0, triangle, baseI, 1, padded);
+        kernels.fir(mixQ, 0, triangle, baseQ, 1, padded);
+        kernels.lagProducts(baseI, baseQ, padded, cross, dot);
+
+        double totalCross = 0, totalDot = 0;
+        for(int n = Math.max(0, skip); n < span; n++) {
+            totalCross += cross[n];
+            totalDot += dot[n];
+            crossSum[n - skip + 1] = totalCross;
+            dotSum[n - skip + 1] = totalDot;
+        }
+    }
+
+    /**
+     * Gets the mean frequency over a span of the last tracked range
+     * @param from first sample, relative to the start of the range
+     * @param to end of the span (exclusive), relative to the start of the range
+     * @return frequency in Hz
+     */
+    public double frequency(int from, int to) {
+        if(from < 0 || to > count || to <= from) {
+            throw new IndexOutOfBoundsException("Span " + from + "-" + to + " of " + count);
+        }
+        double cross = crossSum[to] - crossSum[from];
+        double dot = dotSum[to] - dotSum[from];
+        return centerFreq + Math.atan2(cross, dot) * sampleRate / (2 * Math.PI);
+    }
+}
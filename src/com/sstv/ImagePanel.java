@@ -2,31 +2,43 @@ package src.com.sstv;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 public class ImagePanel extends JPanel {
     private final Color[][] image;
     private final int pixelSize;
+    private final BufferedImage rendered; // Colour matrix converted once, drawn scaled on every paint
 
     public ImagePanel(Color[][] image, int pixelSize) {
         this.image = image;
         this.pixelSize = pixelSize;
+        this.rendered = new BufferedImage(image.length, image[0].length, BufferedImage.TYPE_INT_RGB);
+        refresh();
         setPreferredSize(new Dimension(
             image.length * pixelSize, 
             image[0].length * pixelSize
         ));
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
+    /**
+     * Converts the colour matrix again after it has been modified, and repaints
+     */
+    public void refresh() {
+        int width = rendered.getWidth();
+        int[] pixels = ((DataBufferInt) rendered.getRaster().getDataBuffer()).getData();
         for (int x = 0; x < image.length; x++) {
             for (int y = 0; y < image[x].length; y++) {
                 Color color = image[x][y];
-                g.setColor(new java.awt.Color(
-                    color.getR(), color.getG(), color.getB()
-                ));
-                g.fillRect(x * pixelSize, y * pixelSize, pixelSize, pixelSize);
+                pixels[y * width + x] = (color.getR() << 16) | (color.getG() << 8) | color.getB();
             }
         }
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        g.drawImage(rendered, 0, 0, rendered.getWidth() * pixelSize, rendered.getHeight() * pixelSize, null);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,255 @@
+package src.com.sstv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SSTV transmission modes.
+ * A mode describes its VIS code, resolution and colour space, plus the layout of one transmitted line
+ * as a sequence of {@link Segment}s (fixed tones and pixel scans). Some modes send two image rows per
+ * transmitted line (PD, and Robot 36 whose chroma alternates between rows), see {@link #getRowsPerLine()}.
+ */
+public enum Mode {
+    SCOTTIE_1("Scottie 1", 60, 320, 256, ColorSpace.RGB, scottiePreamble(), scottie(138.240)),
+    SCOTTIE_2("Scottie 2", 56, 320, 256, ColorSpace.RGB, scottiePreamble(), scottie(88.064)),
+    SCOTTIE_DX("Scottie DX", 76, 320, 256, ColorSpace.RGB, scottiePreamble(), scottie(345.6)),
+    MARTIN_1("Martin 1", 44, 320, 256, ColorSpace.RGB, none(), martin(146.432)),
+    MARTIN_2("Martin 2", 40, 320, 256, ColorSpace.RGB, none(), martin(73.216)),
+    ROBOT_36("Robot 36", 8, 320, 240, ColorSpace.YCBCR, none(), robot36()),
+    ROBOT_72("Robot 72", 12, 320, 240, ColorSpace.YCBCR, none(), robot72()),
+    PD_50("PD50", 93, 320, 256, ColorSpace.YCBCR, none(), pd(91.52)),
+    PD_90("PD90", 99, 320, 256, ColorSpace.YCBCR, none(), pd(170.24)),
+    PD_120("PD120", 95, 640, 496, ColorSpace.YCBCR, none(), pd(121.6)),
+    PD_160("PD160", 98, 512, 400, ColorSpace.YCBCR, none(), pd(195.584)),
+    PD_180("PD180", 96, 640, 496, ColorSpace.YCBCR, none(), pd(183.04)),
+    PD_240("PD240", 97, 640, 496, ColorSpace.YCBCR, none(), pd(244.48)),
+    PD_290("PD290", 94, 800, 616, ColorSpace.YCBCR, none(), pd(228.8));
+
+    // Standard SSTV tone frequencies
+    public static final double SYNC_FREQ = 1200;
+    public static final double BLACK_FREQ = 1500;
+    public static final double WHITE_FREQ = 2300;
+    public static final double LEADER_FREQ = 1900;
+
+    /** How pixel values are carried by the scans */
+    public enum ColorSpace { RGB, YCBCR }
+
+    /** Pixel component carried by a scan */
+    public enum Channel { RED, GREEN, BLUE, Y, CB, CR }
+
+    /**
+     * One piece of a transmitted line: a fixed tone, a sync pulse or a pixel scan.
+     */
+    public static final class Segment {
+        /** Value of {@link #getRow()} for a scan averaged over all rows of the line (subsampled chroma) */
+        public static final int ALL_ROWS = -1;
+
+        public enum Kind { SYNC, TONE, SCAN }
+
+        private final Kind kind;
+        private final double frequency;  // Tone frequency in Hz (unused for scans)
+        private final double durationMs;
+        private final Channel channel;   // Scanned channel (scans only)
+        private final int row;           // Row within the line (scans only)
+
+        private Segment(Kind kind, double frequency, double durationMs, Channel channel, int row) {
+            this.kind = kind;
+            this.frequency = frequency;
+            this.durationMs = durationMs;
+            this.channel = channel;
+            this.row = row;
+        }
+
+        static Segment sync(double durationMs) {
+            return new Segment(Kind.SYNC, SYNC_FREQ, durationMs, null, 0);
+        }
+
+        static Segment tone(double frequency, double durationMs) {
+            return new Segment(Kind.TONE, frequency, durationMs, null, 0);
+        }
+
+        static Segment scan(Channel channel, double durationMs, int row) {
+            return new Segment(Kind.SCAN, 0, durationMs, channel, row);
+        }
+
+        public Kind getKind() { return kind; }
+        public double getFrequency() { return frequency; }
+        public double getDurationMs() { return durationMs; }
+        public Channel getChannel() { return channel; }
+        public int getRow() { return row; }
+    }
+
+    private final String displayName;
+    private final int visCode;
+    private final int width;
+    private final int height;
+    private final ColorSpace colorSpace;
+    private final List<Segment> preamble;   // Sent once after the VIS header
+    private final List<Segment> line;       // Sent for every transmitted line
+    private final int rowsPerLine;
+    private final double lineMs;
+    private final double preambleMs;
+
+    Mode(String displayName, int visCode, int width, int height, ColorSpace colorSpace,
+         Segment[] preamble, Segment[] line) {
+        this.displayName = displayName;
+        this.visCode = visCode;
+        this.width = width;
+        this.height = height;
+        this.colorSpace = colorSpace;
+        this.preamble = Collections.unmodifiableList(Arrays.asList(preamble));
+        this.line = Collections.unmodifiableList(Arrays.asList(line));
+
+        int rows = 1;
+        for(Segment segment : line) rows = Math.max(rows, segment.row + 1);
+        this.rowsPerLine = rows;
+        this.lineMs = totalMs(line);
+        this.preambleMs = totalMs(preamble);
+    }
+
+    public String getDisplayName() { return displayName; }
+    public int getVisCode() { return visCode; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public ColorSpace getColorSpace() { return colorSpace; }
+    public List<Segment> getPreamble() { return preamble; }
+    public List<Segment> getLineSegments() { return line; }
+
+    /**
+     * Gets the number of image rows carried by one transmitted line
+     * @return 1 for most modes, 2 for PD and Robot 36
+     */
+    public int getRowsPerLine() { return rowsPerLine; }
+
+    /**
+     * Gets the number of transmitted lines per frame
+     * @return height divided by rows per line
+     */
+    public int getLineCount() { return height / rowsPerLine; }
+
+    public double getLineMs() { return lineMs; }
+    public double getPreambleMs() { return preambleMs; }
+
+    /**
+     * Gets the duration of the image part of a transmission, without the VIS header
+     * @return duration in milliseconds
+     */
+    public double getFrameMs() {
+        return preambleMs + lineMs * getLineCount();
+    }
+
+    /**
+     * Gets the order in which channels are scanned within a line
+     * @return scanned channels, without duplicates
+     */
+    public List<Channel> getChannelOrder() {
+        List<Channel> order = new ArrayList<>();
+        for(Segment segment : line) {
+            if(segment.kind == Segment.Kind.SCAN && !order.contains(segment.channel)) order.add(segment.channel);
+        }
+        return order;
+    }
+
+    /**
+     * Looks up a mode by its VIS code
+     * @param visCode 7-bit VIS code
+     * @return the mode, or null if the code is not supported
+     */
+    public static Mode fromVisCode(int visCode) {
+        for(Mode mode : values()) {
+            if(mode.visCode == visCode) return mode;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    private static double totalMs(Segment[] segments) {
+        double total = 0;
+        for(Segment segment : segments) total += segment.durationMs;
+        return total;
+    }
+
+    private static Segment[] none() {
+        return new Segment[0];
+    }
+
+    // Scottie sends a single sync before the first line, then the sync sits between blue and red
+    private static Segment[] scottiePreamble() {
+        return new Segment[]{ Segment.sync(9.0) };
+    }
+
+    private static Segment[] scottie(double scanMs) {
+        return new Segment[]{
+            Segment.tone(BLACK_FREQ, 1.5),
+            Segment.scan(Channel.GREEN, scanMs, 0),
+            Segment.tone(BLACK_FREQ, 1.5),
+            Segment.scan(Channel.BLUE, scanMs, 0),
+            Segment.sync(9.0),
+            Segment.tone(BLACK_FREQ, 1.5),
+            Segment.scan(Channel.RED, scanMs, 0)
+        };
+    }
+
+    private static Segment[] martin(double scanMs) {
+        return new Segment[]{
+            Segment.sync(4.862),
+            Segment.tone(BLACK_FREQ, 0.572),
+            Segment.scan(Channel.GREEN, scanMs, 0),
+            Segment.tone(BLACK_FREQ, 0.572),
+            Segment.scan(Channel.BLUE, scanMs, 0),
+            Segment.tone(BLACK_FREQ, 0.572),
+            Segment.scan(Channel.RED, scanMs, 0),
+            Segment.tone(BLACK_FREQ, 0.572)
+        };
+    }
+
+    // Robot 36 alternates R-Y and B-Y between lines, so one transmitted line here covers a row pair
+    private static Segment[] robot36() {
+        return new Segment[]{
+            Segment.sync(9.0),
+            Segment.tone(BLACK_FREQ, 3.0),
+            Segment.scan(Channel.Y, 88.0, 0),
+            Segment.tone(BLACK_FREQ, 4.5),
+            Segment.tone(LEADER_FREQ, 1.5),
+            Segment.scan(Channel.CR, 44.0, Segment.ALL_ROWS),
+            Segment.sync(9.0),
+            Segment.tone(BLACK_FREQ, 3.0),
+            Segment.scan(Channel.Y, 88.0, 1),
+            Segment.tone(WHITE_FREQ, 4.5),
+            Segment.tone(LEADER_FREQ, 1.5),
+            Segment.scan(Channel.CB, 44.0, Segment.ALL_ROWS)
+        };
+    }
+
+    private static Segment[] robot72() {
+        return new Segment[]{
+            Segment.sync(9.0),
+            Segment.tone(BLACK_FREQ, 3.0),
+            Segment.scan(Channel.Y, 138.0, 0),
+            Segment.tone(BLACK_FREQ, 4.5),
+            Segment.tone(LEADER_FREQ, 1.5),
+            Segment.scan(Channel.CR, 69.0, 0),
+            Segment.tone(WHITE_FREQ, 4.5),
+            Segment.tone(LEADER_FREQ, 1.5),
+            Segment.scan(Channel.CB, 69.0, 0)
+        };
+    }
+
+    // PD modes send Y of two rows around the chroma they share
+    private static Segment[] pd(double scanMs) {
+        return new Segment[]{
+            Segment.sync(20.0),
+            Segment.tone(BLACK_FREQ, 2.08),
+            Segment.scan(Channel.Y, scanMs, 0),
+            Segment.scan(Channel.CR, scanMs, Segment.ALL_ROWS),
+            Segment.scan(Channel.CB, scanMs, Segment.ALL_ROWS),
+            Segment.scan(Channel.Y, scanMs, 1)
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package src.com.sstv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Reusable staging block of 16-bit little-endian mono PCM, backed by a direct buffer.
+ * <p>
+ * Generators render blocks of {@code short} (or normalized {@code float}) samples and append them with bulk
+ * puts instead of storing two bytes per sample. The block is then handed to a {@link PcmSink} as a single
+ * {@link ByteBuffer}: channel-backed sinks (files, {@link WavWriter}) write it as is, without the heap copy
+ * NIO makes of non-direct buffers. The buffer grows to the largest block it has held and is then reused.
+ */
+public final class PcmBuffer {
+    private static final int CONVERT_CHUNK = 4096; // Samples converted from float at a time
+
+    private ByteBuffer bytes;   // Direct, little-endian storage
+    private ShortBuffer samples; // Sample view of the storage, its position is the sample count
+    private short[] converted = new short[0]; // Reusable staging for float blocks
+
+    /**
+     * Creates an empty buffer
+     * @param capacity initial capacity in samples
+     */
+    public PcmBuffer(int capacity) {
+        bytes = ByteBuffer.allocateDirect(Math.max(1, capacity) * 2).order(ByteOrder.LITTLE_ENDIAN);
+        samples = bytes.asShortBuffer();
+    }
+
+    /**
+     * Appends a block of samples
+     * @param block samples
+     * @param offset first sample to append
+     * @param count number of samples
+     */
+    public void write(short[] block, int offset, int count) {
+        ensureCapacity(count);
+        samples.put(block, offset, count);
+    }
+
+    /**
+     * Appends a block of normalized samples, scaled to full 16-bit range and clipped to [-1, 1]
+     * @param block samples in [-1, 1]
+     * @param offset first sample to append
+     * @param count number of samples
+     */
+    public void write(float[] block, int offset, int count) {
+        ensureCapacity(count);
+        if(converted.length < Math.min(count, CONVERT_CHUNK)) converted = new short[Math.min(count, CONVERT_CHUNK)];
+        for(int done = 0; done < count; ) {
+            int n = Math.min(converted.length, count - done);
+            for(int i = 0; i < n; i++) {
+                float sample = Math.max(-1f, Math.min(1f, block[offset + done + i]));
+                converted[i] = (short)(sample * Short.MAX_VALUE);
+            }
+            samples.put(converted, 0, n);
+            done += n;
+        }
+    }
+
+    /**
+     * Gets the number of samples waiting in the buffer
+     * @return samples appended since the last drain
+     */
+    public int size() { return samples.position(); }
+
+    /**
+     * Discards every sample in the buffer
+     */
+    public void clear() { samples.clear(); }
+
+    /**
+     * Writes every sample to a sink in one block and empties the buffer
+     * @param sink destination
+     * @throws IOException if the sink cannot be written
+     */
+    public void drainTo(PcmSink sink) throws IOException {
+        int size = size();
+        if(size == 0) return;
+        bytes.limit(size * 2).position(0);
+        try {
+            sink.write(bytes);
+        } finally {
+            bytes.clear();
+            samples.clear();
+        }
+    }
+
+    // Grow the storage so that the given number of samples can be appended, keeping the samples already there
+    private void ensureCapacity(int count) {
+        int size = size();
+        if(samples.capacity() - size >= count) return;
+        int capacity = samples.capacity();
+        while(capacity - size < count) capacity <<= 1;
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.limit(size * 2).position(0);
+        grown.put(bytes);
+        grown.clear();
+        bytes = grown;
+        samples = grown.asShortBuffer();
+        samples.position(size);
+    }
+}
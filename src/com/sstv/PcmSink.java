@@ -0,0 +1,128 @@
+package src.com.sstv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Destination for 16-bit little-endian mono PCM produced by the encoders.
+ */
+public interface PcmSink extends Closeable {
+    /**
+     * Writes a block of PCM bytes. The sink must not keep a reference to the array.
+     * @param pcm PCM bytes
+     * @param offset first byte to write
+     * @param length number of bytes to write
+     * @throws IOException if the destination cannot be written
+     */
+    void write(byte[] pcm, int offset, int length) throws IOException;
+
+    /**
+     * Writes the remaining bytes of a buffer, leaving its position at its limit.
+     * The sink must not keep a reference to the buffer. Sinks backed by a channel write it directly;
+     * the default copies it through a byte array.
+     * @param pcm PCM bytes, typically the direct buffer of a {@link PcmBuffer}
+     * @throws IOException if the destination cannot be written
+     */
+    default void write(ByteBuffer pcm) throws IOException {
+        copy(pcm, staging(), this);
+    }
+
+    @Override
+    default void close() throws IOException {}
+
+    /**
+     * Creates a sink that plays on an open audio line. Closing the sink drains the line but leaves it open.
+     * @param line started output line in the encoder format
+     * @return sink writing to the line
+     */
+    static PcmSink of(SourceDataLine line) {
+        return new PcmSink() {
+            private final byte[] chunk = staging(); // The line only accepts arrays
+
+            @Override
+            public void write(byte[] pcm, int offset, int length) {
+                line.write(pcm, offset, length);
+            }
+
+            @Override
+            public void write(ByteBuffer pcm) throws IOException {
+                copy(pcm, chunk, this);
+            }
+
+            @Override
+            public void close() {
+                line.drain();
+            }
+        };
+    }
+
+    /**
+     * Creates a sink that writes to a channel. Closing the sink leaves the channel open.
+     * @param channel destination channel
+     * @return sink writing to the channel
+     */
+    static PcmSink of(WritableByteChannel channel) {
+        return new PcmSink() {
+            @Override
+            public void write(byte[] pcm, int offset, int length) throws IOException {
+                write(ByteBuffer.wrap(pcm, offset, length));
+            }
+
+            @Override
+            public void write(ByteBuffer pcm) throws IOException {
+                while(pcm.hasRemaining()) {
+                    channel.write(pcm);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a sink that writes to a stream. Closing the sink flushes the stream but leaves it open.
+     * @param out destination stream
+     * @return sink writing to the stream
+     */
+    static PcmSink of(OutputStream out) {
+        return new PcmSink() {
+            private final byte[] chunk = staging();
+
+            @Override
+            public void write(byte[] pcm, int offset, int length) throws IOException {
+                out.write(pcm, offset, length);
+            }
+
+            @Override
+            public void write(ByteBuffer pcm) throws IOException {
+                copy(pcm, chunk, this);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    // Staging array of sinks that only accept byte arrays
+    private static byte[] staging() {
+        return new byte[16 * 1024];
+    }
+
+    // Hand a buffer to an array-based sink, straight from its backing array when it has one
+    private static void copy(ByteBuffer pcm, byte[] chunk, PcmSink sink) throws IOException {
+        if(pcm.hasArray()) {
+            sink.write(pcm.array(), pcm.arrayOffset() + pcm.position(), pcm.remaining());
+            pcm.position(pcm.limit());
+            return;
+        }
+        while(pcm.hasRemaining()) {
+            int length = Math.min(chunk.length, pcm.remaining());
+            pcm.get(chunk, 0, length);
+            sink.write(chunk, 0, length);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package src.com.sstv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.*;
+
+/**
+ * Long-lived audio output fed from a queue of pre-rendered blocks.
+ * <p>
+ * The output line is opened once and kept running. Producers copy their samples into blocks taken from a
+ * fixed pool and queue them; a dedicated thread writes the blocks to the line back to back, so consecutive
+ * segments play without gaps and a producer never waits for the sound card, only for a free block once the
+ * whole queue is full. Running out of queued audio while playing is counted as an underrun.
+ * <p>
+ * Audio is 16-bit signed little-endian mono PCM, like every other {@link PcmSink}. Only whole samples reach the
+ * line: a byte stream split in the middle of a sample keeps its odd byte until the next write completes it.
+ * <p>
+ * If the line fails, the engine closes itself: calls fail with an {@link IllegalStateException} carrying the
+ * cause, drains waiting for the queue are released with it, and queued blocks are discarded so no producer hangs.
+ */
+public class PlaybackEngine implements PcmSink {
+    public static final int DEFAULT_LINE_MS = 100;   // Audio buffered by the sound card
+    public static final int DEFAULT_QUEUE_MS = 2000; // Audio that may be queued ahead of the sound card
+    private static final int BLOCK_MS = 10;          // Audio held by one pooled block
+
+    private final SourceDataLine line;
+    private final BlockingQueue<Block> free;          // Pool of empty blocks, bounds the queue
+    private final BlockingQueue<Block> pending = new LinkedBlockingQueue<>(); // Blocks and drain markers to play
+    private final int blockBytes;
+    private final int poolSize;
+    private final float sampleRate;
+    private final Thread writer;
+    private final AtomicLong underruns = new AtomicLong();
+    private int carry = -1;                           // Odd byte of an unfinished sample, -1 if none
+    private volatile boolean closed = false;
+    private volatile RuntimeException failure;        // Why the writer stopped, null while it runs
+
+    /**
+     * Opens the default audio output with the default latencies
+     * @param sampleRate sample rate in Hz
+     * @throws LineUnavailableException if the output cannot be opened
+     */
+    public PlaybackEngine(float sampleRate) throws LineUnavailableException {
+        this(sampleRate, DEFAULT_LINE_MS, DEFAULT_QUEUE_MS);
+    }
+
+    /**
+     * Opens the default audio output
+     * @param sampleRate sample rate in Hz
+     * @param lineMs size of the sound card buffer in milliseconds (output latency)
+     * @param queueMs audio that may be queued ahead of the sound card in milliseconds
+     * @throws LineUnavailableException if the output cannot be opened
+     */
+    public PlaybackEngine(float sampleRate, int lineMs, int queueMs) throws LineUnavailableException {
+        this(AudioSystem.getSourceDataLine(format(sampleRate)), sampleRate, lineMs, queueMs);
+    }
+
+    /**
+     * Plays on a given output line
+     * @param line output line supporting 16-bit little-endian mono PCM at the sample rate, not yet open
+     * @param sampleRate sample rate in Hz
+     * @param lineMs size of the sound card buffer in milliseconds (output latency)
+     * @param queueMs audio that may be queued ahead of the sound card in milliseconds
+     * @throws LineUnavailableException if the line cannot be opened
+     */
+    public PlaybackEngine(SourceDataLine line, float sampleRate, int lineMs, int queueMs) throws LineUnavailableException {
+        if(lineMs < 1 || queueMs < BLOCK_MS) throw new IllegalArgumentException("Latencies too small: " + lineMs + "/" + queueMs + " ms");
+        this.line = line;
+        this.sampleRate = sampleRate;
+        this.blockBytes = 2 * (int)Math.ceil(sampleRate * BLOCK_MS / 1000);
+        this.poolSize = queueMs / BLOCK_MS;
+        this.free = new ArrayBlockingQueue<>(poolSize);
+        for(int i = 0; i < poolSize; i++) free.add(new Block(blockBytes));
+
+        line.open(format(sampleRate), 2 * (int)(sampleRate * lineMs / 1000));
+        line.start();
+        writer = new Thread(this::play, "sstv-playback");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MAX_PRIORITY); // Feeding the sound card is the only time-critical work
+        writer.start();
+    }
+
+    /**
+     * Queues samples for playback, waiting only if the queue is full
+     * @param samples 16-bit samples
+     * @param offset first sample to queue
+     * @param count number of samples
+     * @throws InterruptedException if interrupted while waiting for room in the queue
+     */
+    public synchronized void enqueue(short[] samples, int offset, int count) throws InterruptedException {
+        ensureOpen();
+        carry = -1; // Whole samples follow, an unfinished byte stream is dropped
+        while(count > 0) {
+            ensureOpen(); // Stop early if the line failed while waiting
+            Block block = free.take();
+            int n = Math.min(count, blockBytes / 2);
+            block.fill(samples, offset, n);
+            pending.add(block);
+            offset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Queues samples for playback without waiting
+     * @param samples 16-bit samples
+     * @param offset first sample to queue
+     * @param count number of samples
+     * @return false if the queue has no room for all of the samples, in which case none are queued
+     */
+    public synchronized boolean offer(short[] samples, int offset, int count) {
+        ensureOpen();
+        int blocks = (count + blockBytes / 2 - 1) / (blockBytes / 2);
+        if(free.size() < blocks) return false; // Only the writer returns blocks, so the room can only grow
+        carry = -1;
+        while(count > 0) {
+            Block block = free.poll();
+            int n = Math.min(count, blockBytes / 2);
+            block.fill(samples, offset, n);
+            pending.add(block);
+            offset += n;
+            count -= n;
+        }
+        return true;
+    }
+
+    @Override
+    public void write(byte[] pcm, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(pcm, offset, length));
+    }
+
+    @Override
+    public synchronized void write(ByteBuffer pcm) throws IOException {
+        ensureOpen();
+        try {
+            while(pcm.remaining() + (carry >= 0 ? 1 : 0) >= 2) {
+                ensureOpen();
+                Block block = free.take();
+                block.fill(carry, pcm);
+                carry = -1;
+                pending.add(block);
+            }
+            if(pcm.hasRemaining()) carry = pcm.get() & 0xFF; // Low byte of a sample completed by the next write
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing audio");
+        }
+    }
+
+    /**
+     * Waits until everything queued so far has been played.
+     * A pause after a drain is not counted as an underrun, and an odd byte still waiting for its pair is dropped.
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the engine is closed, or the line failed before the queue was played
+     */
+    public void drain() throws InterruptedException {
+        CountDownLatch played = new CountDownLatch(1);
+        synchronized (this) { // After every block of the writes in progress
+            ensureOpen();
+            carry = -1;
+            pending.add(new Block(played));
+        }
+        played.await();
+        if(failure != null) throw new IllegalStateException("Playback failed", failure);
+    }
+
+    /**
+     * Gets how often the sound card ran out of audio while playing
+     * @return underruns since the engine was opened
+     */
+    public long getUnderruns() { return underruns.get(); }
+
+    /**
+     * Gets roughly how much audio is waiting in the queue, not counting the sound card buffer
+     * @return queued audio in milliseconds
+     */
+    public int getQueuedMs() { return (poolSize - free.size()) * BLOCK_MS; }
+
+    public float getSampleRate() { return sampleRate; }
+
+    /**
+     * Plays everything still queued, then closes the output line.
+     * Writes are refused from the moment this is called, so only audio accepted before it is played.
+     */
+    @Override
+    public void close() {
+        CountDownLatch played = new CountDownLatch(1);
+        synchronized (this) { // After every block of the writes in progress, and before any later write
+            if(closed) {
+                writer.interrupt(); // Stops a failed writer, which only discards blocks
+                return;
+            }
+            closed = true;
+            carry = -1;
+            pending.add(new Block(played));
+        }
+        try {
+            played.await(); // Also released if the line fails meanwhile
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Close right away, dropping what is left
+        }
+        writer.interrupt();
+        line.stop();
+        line.close();
+    }
+
+    private void ensureOpen() {
+        if(failure != null) throw new IllegalStateException("Playback failed", failure);
+        if(closed) throw new IllegalStateException("Playback engine is closed");
+    }
+
+    // Writer thread: feed queued blocks to the line back to back
+    private void play() {
+        boolean playing = false; // Audio was written since the last drain
+        try {
+            while(true) { // Until close() has seen its marker played and interrupts
+                Block block = pending.take();
+                if(block.played != null) {
+                    line.drain();
+                    playing = false;
+                    block.played.countDown();
+                    continue;
+                }
+                if(playing && line.available() >= line.getBufferSize()) {
+                    underruns.incrementAndGet(); // The line played everything and waited for this block
+                }
+                line.write(block.pcm, 0, block.length);
+                playing = true;
+                free.add(block);
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    // Writer thread: the line failed, close and keep releasing producers and drains until the engine is closed
+    private void fail(RuntimeException e) {
+        failure = e;
+        closed = true;
+        line.close();
+        try {
+            while(true) {
+                Block block = pending.take();
+                if(block.played != null) block.played.countDown();
+                else free.add(block);
+            }
+        } catch (InterruptedException stopped) {
+            // close() was called
+        }
+    }
+
+    private static AudioFormat format(float sampleRate) {
+        return new AudioFormat(sampleRate, 16, 1, true, false);
+    }
+
+    // Pooled block of PCM bytes, or a drain marker
+    private static final class Block {
+        final byte[] pcm;
+        final ShortBuffer samples;    // Little-endian sample view of the bytes
+        final CountDownLatch played;  // Set on drain markers only
+        int length;                   // Bytes in use
+
+        Block(int bytes) {
+            pcm = new byte[bytes];
+            samples = ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            played = null;
+        }
+
+        Block(CountDownLatch played) {
+            pcm = null;
+            samples = null;
+            this.played = played;
+        }
+
+        void fill(short[] source, int offset, int count) {
+            samples.clear();
+            samples.put(source, offset, count);
+            length = 2 * count;
+        }
+
+        // Whole samples only: the odd byte of the previous write (or -1) first, then bytes up to an even length
+        void fill(int carry, ByteBuffer source) {
+            int at = 0;
+            if(carry >= 0) pcm[at++] = (byte)carry;
+            length = (at + Math.min(pcm.length - at, source.remaining())) & ~1;
+            source.get(pcm, at, length - at);
+        }
+    }
+}
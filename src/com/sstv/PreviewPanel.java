@@ -3,28 +3,71 @@ package src.com.sstv;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
+/**
+ * Scaled live view of an image that is filled in while it is being received.
+ * Pixels can be written from any thread: they go straight into the image raster, and the rows touched
+ * since the last refresh are repainted as one region at most once per frame interval, on the EDT.
+ */
 public class PreviewPanel extends JPanel {
-    private BufferedImage image;
+    private static final int REFRESH_MS = 40; // Repaint interval (25 frames per second)
+
+    private final Object lock = new Object();   // Guards the image, its pixels and the dirty rows
     private final int scale;
+    private final Timer refresh;
+    private volatile BufferedImage image;
+    private int[] pixels;                       // Raster of the image, TYPE_INT_RGB
+    private int dirtyFrom = Integer.MAX_VALUE;  // First row changed since the last repaint
+    private int dirtyTo = -1;                   // Last row changed since the last repaint
 
     public PreviewPanel(int width, int height, int scale) {
         this.scale = scale;
-        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        allocate(width, height);
         setPreferredSize(new Dimension(width * scale, height * scale));
+        refresh = new Timer(REFRESH_MS, e -> flush());
+        refresh.setCoalesce(true);
     }
 
     public void setPixel(int x, int y, int color) {
-        image.setRGB(x, y, color);
-        // Only repaint the affected pixel area
-        repaint(x * scale, y * scale, scale, scale);
+        synchronized (lock) {
+            pixels[y * image.getWidth() + x] = color;
+            markDirty(y, y);
+        }
+    }
+
+    /**
+     * Replaces one row of the image
+     * @param y row index
+     * @param rgb packed RGB pixels, at least as many as the image width
+     */
+    public void setLine(int y, int[] rgb) {
+        synchronized (lock) {
+            int width = image.getWidth();
+            System.arraycopy(rgb, 0, pixels, y * width, width);
+            markDirty(y, y);
+        }
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         // Scale up the image to make it visible
-        g.drawImage(image, 0, 0, image.getWidth() * scale, image.getHeight() * scale, null);
+        BufferedImage current = image;
+        g.drawImage(current, 0, 0, current.getWidth() * scale, current.getHeight() * scale, null);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refresh.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refresh.stop();
+        super.removeNotify();
     }
 
     public BufferedImage getImage() {
@@ -32,7 +75,55 @@ public class PreviewPanel extends JPanel {
     }
 
     public void resetImage() {
-        image = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
-        repaint();
+        resetImage(image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Clears the image, resizing it if needed. The image is only reallocated when its size changes.
+     * @param width new width in pixels
+     * @param height new height in pixels
+     */
+    public void resetImage(int width, int height) {
+        boolean resized;
+        synchronized (lock) {
+            resized = width != image.getWidth() || height != image.getHeight();
+            if(resized) {
+                allocate(width, height);
+            } else {
+                Arrays.fill(pixels, 0);
+            }
+            markDirty(0, height - 1);
+        }
+        if(resized) {
+            SwingUtilities.invokeLater(() -> {
+                setPreferredSize(new Dimension(width * scale, height * scale));
+                revalidate();
+            });
+        }
+    }
+
+    private void allocate(int width, int height) {
+        BufferedImage created = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) created.getRaster().getDataBuffer()).getData();
+        image = created;
+    }
+
+    private void markDirty(int from, int to) {
+        dirtyFrom = Math.min(dirtyFrom, from);
+        dirtyTo = Math.max(dirtyTo, to);
+    }
+
+    // Runs on the EDT: repaint every row changed since the last refresh as a single region
+    private void flush() {
+        int from, to;
+        synchronized (lock) {
+            from = dirtyFrom;
+            to = dirtyTo;
+            dirtyFrom = Integer.MAX_VALUE;
+            dirtyTo = -1;
+        }
+        if(to >= from) {
+            repaint(0, from * scale, getWidth(), (to - from + 1) * scale);
+        }
     }
 }
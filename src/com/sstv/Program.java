@@ -4,12 +4,19 @@ import javax.swing.*;
 import javax.sound.sampled.*;
 
 public class Program {
+    // Shared by every receive window, so all inputs decode on one bounded worker pool
+    private static final ReceiverManager receivers = new ReceiverManager();
+    // Rendered broadcasts, so sending the same image again starts at once
+    private static final TransmissionCache transmissions = new TransmissionCache(128L * 1024 * 1024);
+
     public static void main(String[] args) {
         JFrame frame = new JFrame("SSTV Encoder/Decoder");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(300, 200);
 
         JPanel panel = new JPanel();
+        JComboBox<Mode> modeBox = new JComboBox<>(Mode.values());
+        modeBox.setSelectedItem(Mode.SCOTTIE_DX);
         JButton encodeButton = new JButton("Broadcast Image");
         JButton decodeButton = new JButton("Receive Signal");
 
@@ -17,22 +24,24 @@ public class Program {
             JFileChooser fileChooser = new JFileChooser();
             if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
                 try {
-                    SSTVImageEncoder.encodeImage(fileChooser.getSelectedFile().getPath());
+                    SSTVImageEncoder.encodeImage(fileChooser.getSelectedFile().getPath(),
+                        (Mode) modeBox.getSelectedItem(), transmissions);
                 } catch (Exception ex) {
                     ex.printStackTrace();
                 }
             }
         });
 
-        decodeButton.addActionListener(e -> new Thread(() -> {
+        decodeButton.addActionListener(e -> {
             try {
-                SSTVDecoder decoder = new SSTVDecoder();
-                decoder.startDecoding();
+                String name = "SSTV Decoder " + (receivers.getChannels().size() + 1);
+                receivers.openInput(name, 1, DecoderWindow::new);
             } catch (LineUnavailableException ex) {
                 ex.printStackTrace();
             }
-        }).start());
+        });
 
+        panel.add(modeBox);
         panel.add(encodeButton);
         panel.add(decodeButton);
         frame.add(panel);
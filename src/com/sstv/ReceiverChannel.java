@@ -0,0 +1,217 @@
+package src.com.sstv;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One mono decoding pipeline managed by a {@link ReceiverManager}.
+ * Audio chunks are written by the capture thread into pooled blocks of a {@link CaptureRing} and decoded on the
+ * shared worker pool, with at most one worker running the channel's decoder at a time.
+ */
+public class ReceiverChannel {
+    private static final int DRAIN_BATCH = 16;   // Chunks decoded before yielding the worker to other channels
+
+    private final String name;
+    private final SSTVDecoder decoder;
+    private final CaptureRing ring;
+    private final Executor executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicLong chunksProcessed = new AtomicLong();
+    private final AtomicLong bytesProcessed = new AtomicLong();
+    private final AtomicLong framesCompleted = new AtomicLong();
+    private final AtomicLong linesDecoded = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private volatile boolean ended;    // The input has ended, set after its last chunk was published
+    private volatile boolean finished; // The decoder has been finished after the end of the input
+    private volatile Mode mode;
+    private volatile Throwable failure;
+
+    ReceiverChannel(String name, DecoderListener listener, int inputRate, int sampleRate, int queueCapacity, int chunkBytes,
+                    Executor executor) {
+        this.name = name;
+        this.ring = new CaptureRing(queueCapacity, chunkBytes);
+        this.executor = executor;
+        this.decoder = new SSTVDecoder(new DecoderListener() {
+            @Override
+            public void frameStarted(Mode started) {
+                mode = started;
+                listener.frameStarted(started);
+            }
+
+            @Override
+            public void lineDecoded(int y, int[] rgb) {
+                linesDecoded.incrementAndGet();
+                listener.lineDecoded(y, rgb);
+            }
+
+            @Override
+            public void frameCompleted() {
+                mode = null;
+                framesCompleted.incrementAndGet();
+                listener.frameCompleted();
+            }
+        }, inputRate, sampleRate);
+    }
+
+    public String getName() { return name; }
+
+    /**
+     * Gets the counters of the channel's decoder
+     * @return live decoder metrics
+     */
+    public DecoderMetrics getMetrics() { return decoder.getMetrics(); }
+
+    /**
+     * Capture thread: gets a free block to fill with the next chunk of mono PCM, then {@link #submit(int)} it.
+     * While the channel is too far behind, a live input drops the chunk and counts an overrun, so the sound card
+     * is never left unread; any other input waits for a free block (backpressure).
+     * @param live true for a sound card input
+     * @return a block of the ring, or null if the chunk is to be dropped
+     * @throws InterruptedException if interrupted while waiting for a free block
+     */
+    byte[] claim(boolean live) throws InterruptedException {
+        if(failure != null) return null; // A failed decoder drops its input instead of stalling the capture thread
+        byte[] block = ring.claim();
+        if(block == null) {
+            if(live) {
+                decoder.getMetrics().overrun();
+                return null;
+            }
+            stalls.incrementAndGet();
+            block = ring.awaitClaim();
+        }
+        return block;
+    }
+
+    /**
+     * Capture thread: queues the block returned by {@link #claim(boolean)} for decoding
+     * @param length bytes of 16-bit little-endian PCM in the block
+     */
+    void submit(int length) {
+        ring.publish(length);
+        schedule();
+    }
+
+    /**
+     * Capture thread: counts a chunk that could not be queued
+     * @param length bytes of PCM dropped
+     */
+    void drop(int length) {
+        decoder.getMetrics().dropped(length / 2);
+    }
+
+    // Make sure exactly one drain task is pending or running while chunks are queued
+    private void schedule() {
+        if(hasWork() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false); // The manager was closed, queued audio is discarded
+            }
+        }
+    }
+
+    private boolean hasWork() {
+        return !ring.isEmpty() || (ended && !finished);
+    }
+
+    private void drain() {
+        try {
+            byte[] chunk;
+            for(int i = 0; i < DRAIN_BATCH && (chunk = ring.peek()) != null; i++) {
+                int length = ring.peekLength();
+                decoder.processAudio(chunk, 0, length);
+                ring.release();
+                chunksProcessed.incrementAndGet();
+                bytesProcessed.addAndGet(length);
+            }
+            if(ended && !finished && ring.isEmpty()) { // Everything published before the end has been decoded
+                finished = true;
+                decoder.finish();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            ring.clear();
+        } finally {
+            scheduled.set(false);
+        }
+        if(failure == null) schedule(); // Pick up chunks that arrived meanwhile, after other channels had a turn
+    }
+
+    /**
+     * Capture thread: ends the input of this channel, the decoder finishes once everything queued before has been decoded
+     */
+    void finish() {
+        ended = true;
+        schedule();
+    }
+
+    // Nothing queued, nothing left to finish and no drain task pending or running
+    boolean isIdle() {
+        return !hasWork() && !scheduled.get();
+    }
+
+    /**
+     * Takes a snapshot of the channel state
+     * @return current status
+     */
+    public Status getStatus() {
+        return new Status(name, mode, ring.size(), ring.capacity(),
+            chunksProcessed.get(), bytesProcessed.get() / 2, linesDecoded.get(), framesCompleted.get(),
+            stalls.get(), failure);
+    }
+
+    /**
+     * Point-in-time view of a channel.
+     */
+    public static final class Status {
+        private final String name;
+        private final Mode mode;
+        private final int queued;
+        private final int capacity;
+        private final long chunksProcessed;
+        private final long samplesProcessed;
+        private final long linesDecoded;
+        private final long framesCompleted;
+        private final long stalls;
+        private final Throwable failure;
+
+        Status(String name, Mode mode, int queued, int capacity, long chunksProcessed, long samplesProcessed,
+               long linesDecoded, long framesCompleted, long stalls, Throwable failure) {
+            this.name = name;
+            this.mode = mode;
+            this.queued = queued;
+            this.capacity = capacity;
+            this.chunksProcessed = chunksProcessed;
+            this.samplesProcessed = samplesProcessed;
+            this.linesDecoded = linesDecoded;
+            this.framesCompleted = framesCompleted;
+            this.stalls = stalls;
+            this.failure = failure;
+        }
+
+        public String getName() { return name; }
+        /** @return mode of the frame being received, or null while idle */
+        public Mode getMode() { return mode; }
+        /** @return chunks waiting to be decoded */
+        public int getQueued() { return queued; }
+        public int getCapacity() { return capacity; }
+        public long getChunksProcessed() { return chunksProcessed; }
+        public long getSamplesProcessed() { return samplesProcessed; }
+        public long getLinesDecoded() { return linesDecoded; }
+        public long getFramesCompleted() { return framesCompleted; }
+        /** @return how many times the capture thread had to wait for queue space */
+        public long getStalls() { return stalls; }
+        /** @return the error that stopped the decoder, or null */
+        public Throwable getFailure() { return failure; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, queue %d/%d, %d samples, %d lines, %d frames, %d stalls%s",
+                name, mode == null ? "idle" : mode.getDisplayName(), queued, capacity, samplesProcessed,
+                linesDecoded, framesCompleted, stalls, failure == null ? "" : ", failed: " + failure);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package src.com.sstv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.sound.sampled.*;
+
+/**
+ * Decodes any number of audio inputs concurrently on a shared, bounded pool of worker threads.
+ * <p>
+ * Every input gets one capture thread that only reads audio and splits interleaved channels, so a stereo
+ * input feeds two independent {@link ReceiverChannel}s. Decoding happens on the worker pool: each channel
+ * queues its chunks in a bounded queue and runs on at most one worker at a time, in batches, so N channels
+ * share the CPU fairly without a thread each. Chunks are handed over in pooled blocks, so capturing allocates
+ * nothing. When a channel falls behind its queue fills up: a sound card input then drops audio and counts an
+ * overrun, as waiting would only move the loss into the sound card, while any other input blocks (backpressure)
+ * instead of buffering without limit.
+ * <p>
+ * Inputs may run at any sample rate; every channel resamples its input to the decoding rate of the manager.
+ * The {@link DecoderMetrics} of every channel are exported through JMX under its name until the manager is closed.
+ */
+public class ReceiverManager implements AutoCloseable {
+    private static final int CHUNK_FRAMES = 2048;  // Sample frames read from an input at a time
+    private static final int QUEUE_CHUNKS = 64;    // Default chunks a channel may lag behind its input (about 3 s)
+    private static final int CLOSE_WAIT_MS = 1000; // Time close() gives the capture threads to stop
+
+    private final ExecutorService workers;
+    private final int queueCapacity;
+    private final int sampleRate;                  // Rate every channel decodes at
+    private final List<ReceiverChannel> channels = new CopyOnWriteArrayList<>();
+    private final List<Thread> captures = new CopyOnWriteArrayList<>(); // Running capture threads
+    private final List<ObjectName> exported = new CopyOnWriteArrayList<>(); // Metrics registered with JMX
+    private final AtomicInteger inputCount = new AtomicInteger();
+
+    /**
+     * Creates a manager with one worker per available processor
+     */
+    public ReceiverManager() {
+        this(Runtime.getRuntime().availableProcessors(), QUEUE_CHUNKS);
+    }
+
+    /**
+     * Creates a manager decoding at the default sample rate
+     * @param workerCount number of decoding threads shared by all channels
+     * @param queueCapacity chunks a channel may have waiting before its input blocks, or drops audio if live
+     */
+    public ReceiverManager(int workerCount, int queueCapacity) {
+        this(workerCount, queueCapacity, SSTVDecoder.DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Creates a manager
+     * @param workerCount number of decoding threads shared by all channels
+     * @param queueCapacity chunks a channel may have waiting before its input blocks, or drops audio if live
+     * @param sampleRate sample rate every channel decodes at in Hz, e.g. 11025 to cut decoding work
+     */
+    public ReceiverManager(int workerCount, int queueCapacity, int sampleRate) {
+        if(workerCount < 1 || queueCapacity < 1) throw new IllegalArgumentException("Workers and queue capacity must be positive");
+        this.queueCapacity = queueCapacity;
+        this.sampleRate = sampleRate;
+        this.workers = Executors.newFixedThreadPool(workerCount, daemonThreads("sstv-decoder-"));
+    }
+
+    /**
+     * Opens the default audio input at the default sample rate and decodes it
+     * @param name label of the input
+     * @param channelCount 1 for mono, 2 for stereo
+     * @param listeners creates the listener of each channel from its name
+     * @return the channels of the input
+     * @throws LineUnavailableException if the input cannot be opened
+     */
+    public List<ReceiverChannel> openInput(String name, int channelCount,
+                                           Function<String, DecoderListener> listeners) throws LineUnavailableException {
+        return openInput(name, channelCount, SSTVDecoder.DEFAULT_SAMPLE_RATE, listeners);
+    }
+
+    /**
+     * Opens the default audio input and decodes it. A stereo input is decoded as two channels.
+     * @param name label of the input
+     * @param channelCount 1 for mono, 2 for stereo
+     * @param inputRate sample rate to capture at in Hz, e.g. 48000 for an SDR front end
+     * @param listeners creates the listener of each channel from its name
+     * @return the channels of the input
+     * @throws LineUnavailableException if the input cannot be opened
+     */
+    public List<ReceiverChannel> openInput(String name, int channelCount, int inputRate,
+                                           Function<String, DecoderListener> listeners) throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(inputRate, 16, channelCount, true, false);
+        TargetDataLine line = AudioSystem.getTargetDataLine(format);
+        line.open(format);
+        line.start();
+        return addInput(name, new AudioInputStream(line), true, listeners);
+    }
+
+    /**
+     * Decodes an audio stream, one channel per interleaved audio channel.
+     * The stream is read on its own capture thread until it ends or the manager is closed.
+     * @param name label of the input, channels are named after it
+     * @param audio 16-bit signed little-endian PCM at a whole sample rate, any number of channels
+     * @param listeners creates the listener of each channel from its name
+     * @return the channels of the input
+     */
+    public List<ReceiverChannel> addInput(String name, AudioInputStream audio, Function<String, DecoderListener> listeners) {
+        return addInput(name, audio, false, listeners);
+    }
+
+    private List<ReceiverChannel> addInput(String name, AudioInputStream audio, boolean live,
+                                           Function<String, DecoderListener> listeners) {
+        AudioFormat format = audio.getFormat();
+        int inputRate = Math.round(format.getSampleRate());
+        if(format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED || format.getSampleSizeInBits() != 16
+                || format.isBigEndian() || inputRate <= 0 || Math.abs(format.getSampleRate() - inputRate) > 0.01f) {
+            throw new IllegalArgumentException("Expected 16-bit little-endian PCM at a whole sample rate but got " + format);
+        }
+
+        int count = format.getChannels();
+        List<ReceiverChannel> added = new ArrayList<>(count);
+        for(int c = 0; c < count; c++) {
+            String channelName = count == 1 ? name : name + (count == 2 ? (c == 0 ? " L" : " R") : " " + (c + 1));
+            ReceiverChannel channel = new ReceiverChannel(channelName, listeners.apply(channelName), inputRate, sampleRate,
+                queueCapacity, CHUNK_FRAMES * 2, workers);
+            try {
+                exported.add(channel.getMetrics().register(channelName));
+            } catch (JMException e) {
+                // Name taken (by another manager): the metrics stay readable through the channel
+            }
+            added.add(channel);
+        }
+        channels.addAll(added);
+
+        Thread capture = new Thread(() -> {
+            try {
+                capture(audio, added, live);
+            } finally {
+                captures.remove(Thread.currentThread());
+            }
+        }, "sstv-capture-" + inputCount.incrementAndGet());
+        capture.setDaemon(true);
+        capture.setPriority(Thread.MAX_PRIORITY); // Reading must keep up with the sound card, decoding can lag
+        captures.add(capture);
+        capture.start();
+        return Collections.unmodifiableList(added);
+    }
+
+    /**
+     * Gets every channel ever added, in order
+     * @return live view of the channels
+     */
+    public List<ReceiverChannel> getChannels() {
+        return Collections.unmodifiableList(channels);
+    }
+
+    /**
+     * Takes a snapshot of every channel
+     * @return status of each channel, in order
+     */
+    public List<ReceiverChannel.Status> getStatus() {
+        List<ReceiverChannel.Status> status = new ArrayList<>(channels.size());
+        for(ReceiverChannel channel : channels) status.add(channel.getStatus());
+        return status;
+    }
+
+    /**
+     * Waits until every input has ended and all queued audio has been decoded
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if everything finished in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitInputs(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for(Thread capture : captures) {
+            long left = deadline - System.nanoTime();
+            if(left <= 0) return false;
+            TimeUnit.NANOSECONDS.timedJoin(capture, left);
+            if(capture.isAlive()) return false;
+        }
+        while(!drained()) {
+            if(System.nanoTime() >= deadline) return false;
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Stops all inputs and the worker pool. Audio still queued is discarded.
+     * The capture threads are given a second to stop before the pool shuts down; one still blocked in a read
+     * after that stops at its next chunk, which is then dropped.
+     */
+    @Override
+    public void close() {
+        for(Thread capture : captures) capture.interrupt();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_WAIT_MS);
+        try {
+            for(Thread capture : captures) {
+                long left = deadline - System.nanoTime();
+                if(left <= 0) break;
+                TimeUnit.NANOSECONDS.timedJoin(capture, left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Shut down right away
+        }
+        workers.shutdownNow();
+        for(ObjectName name : exported) DecoderMetrics.unregister(name);
+        exported.clear();
+    }
+
+    private boolean drained() {
+        for(ReceiverChannel channel : channels) {
+            if(!channel.isIdle()) return false;
+        }
+        return true;
+    }
+
+    // Capture loop: read interleaved frames and hand each channel its own mono chunk, in a block of its ring
+    private static void capture(AudioInputStream audio, List<ReceiverChannel> targets, boolean live) {
+        int count = targets.size();
+        int frameSize = 2 * count;
+        byte[] buffer = new byte[CHUNK_FRAMES * frameSize];
+        int filled = 0;
+        try (AudioInputStream in = audio) {
+            int bytesRead;
+            while(!Thread.currentThread().isInterrupted()
+                    && (bytesRead = in.read(buffer, filled, buffer.length - filled)) > 0) {
+                filled += bytesRead;
+                int frames = filled / frameSize;
+                if(frames == 0) continue;
+
+                for(int c = 0; c < count; c++) {
+                    ReceiverChannel target = targets.get(c);
+                    byte[] mono = target.claim(live);
+                    if(mono == null) {
+                        target.drop(frames * 2);
+                        continue;
+                    }
+                    for(int f = 0, src = 2 * c; f < frames; f++, src += frameSize) {
+                        mono[2 * f] = buffer[src];
+                        mono[2 * f + 1] = buffer[src + 1];
+                    }
+                    target.submit(frames * 2);
+                }
+
+                // Keep a partial frame for the next read
+                int used = frames * frameSize;
+                System.arraycopy(buffer, used, buffer, 0, filled - used);
+                filled -= used;
+            }
+        } catch (IOException e) {
+            e.printStackTrace(); // The input is gone, decode what was received so far
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for(ReceiverChannel channel : targets) channel.finish();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
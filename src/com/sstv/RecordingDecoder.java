@@ -0,0 +1,331 @@
+package src.com.sstv;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Decodes long recordings, such as a night of monitoring a frequency, on all cores.
+ * <p>
+ * A single {@link SSTVDecoder} walks its input in order on one thread. Here the recording is decoded in two
+ * parallel passes instead. The pre-scan splits the recording into overlapping chunks and only hunts them for
+ * VIS headers, skipping every frame it finds without resampling it, which gives the start and mode of each
+ * transmission. The recording is then cut into one segment per transmission, from the end of its VIS header to a
+ * little past the nominal end of its frame, and every segment is decoded by its own decoder, which starts right
+ * in the frame. Every stretch of audio is thus hunted and resampled once: the gaps and headers by the pre-scan,
+ * the frames by the segments. Images come back in recording order with the time they started at.
+ * <p>
+ * A pre-scan chunk that starts inside a frame cannot know it, and hunts the rest of that frame as well. The
+ * recording is therefore cut into as few chunks as there are threads to run them (each at least a minute long),
+ * so a single thread does the work of one sequential decoder and more threads add only a little hunting each.
+ * <p>
+ * A header inside the nominal span of an earlier frame (a transmission cut short and restarted, or a false
+ * match in image content) does not start a segment of its own. It extends the segment of the earlier frame to
+ * cover its frame as well, whose decoder hunts on after the earlier frame ends, so a real transmission there is
+ * still decoded, only in the same task.
+ */
+public class RecordingDecoder {
+    private static final double SCAN_CHUNK_SECONDS = 60;  // Shortest audio hunted for headers per pre-scan task
+    private static final double SCAN_OVERLAP_SECONDS = 1; // Extra audio per chunk, so no header straddles two chunks
+    private static final double TAIL_SECONDS = 1;         // Audio decoded past the nominal end of a frame
+    private static final double TAIL_SHARE = 0.01;        // And as a share of the frame, for slanted timing
+    private static final double VIS_SECONDS = 0.33;       // VIS header from the start bit to the stop bit
+    private static final int CHUNK_SAMPLES = 4096;        // Samples fed to a decoder at a time
+
+    private RecordingDecoder() {}
+
+    /**
+     * One image found in a recording.
+     */
+    public static final class Reception {
+        private final BufferedImage image;
+        private final Mode mode;
+        private final double startSeconds;
+
+        Reception(BufferedImage image, Mode mode, double startSeconds) {
+            this.image = image;
+            this.mode = mode;
+            this.startSeconds = startSeconds;
+        }
+
+        public BufferedImage getImage() { return image; }
+        public Mode getMode() { return mode; }
+        /** @return time from the start of the recording to the end of the VIS header, in seconds */
+        public double getStartSeconds() { return startSeconds; }
+
+        @Override
+        public String toString() {
+            return String.format("%s at %.1f s", mode.getDisplayName(), startSeconds);
+        }
+    }
+
+    /**
+     * Decodes a recorded WAV (or any other format Java Sound can read) file on the common fork-join pool
+     * @param file mono recording to decode
+     * @param sampleRate sample rate to decode at in Hz, or 0 for the rate of the recording
+     * @return every image found, in recording order
+     * @throws IOException if the file cannot be read
+     * @throws UnsupportedAudioFileException if the file cannot be converted to the decoder format
+     * @throws InterruptedException if interrupted while waiting for the decoders
+     */
+    public static List<Reception> decode(File file, int sampleRate)
+            throws IOException, UnsupportedAudioFileException, InterruptedException {
+        return decode(file, sampleRate, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decodes a recorded WAV (or any other format Java Sound can read) file. Mono 16-bit PCM WAV files are
+     * memory-mapped with a {@link WavReader} and may be of any size; other files are converted in memory.
+     * @param file mono recording to decode
+     * @param sampleRate sample rate to decode at in Hz, or 0 for the rate of the recording
+     * @param executor executor running the pre-scan and decoding tasks
+     * @return every image found, in recording order
+     * @throws IOException if the file cannot be read
+     * @throws UnsupportedAudioFileException if the file cannot be converted to the decoder format
+     * @throws InterruptedException if interrupted while waiting for the decoders
+     */
+    public static List<Reception> decode(File file, int sampleRate, ExecutorService executor)
+            throws IOException, UnsupportedAudioFileException, InterruptedException {
+        try (WavReader reader = WavReader.open(file.toPath())) {
+            if(reader.getChannels() == 1) return decode(reader, sampleRate, executor);
+        } catch (UnsupportedAudioFileException e) {
+            // Not 16-bit PCM WAV, let Java Sound convert it
+        }
+        try (AudioInputStream audio = AudioSystem.getAudioInputStream(file)) {
+            AudioInputStream pcm = SSTVDecoder.toInputFormat(audio);
+            int inputRate = Math.round(pcm.getFormat().getSampleRate());
+            return decode(ByteBuffer.wrap(pcm.readAllBytes()), inputRate, sampleRate > 0 ? sampleRate : inputRate, executor);
+        }
+    }
+
+    /**
+     * Decodes headerless 16-bit little-endian mono PCM on the common fork-join pool
+     * @param pcm samples from the buffer position to its limit, the position is left unchanged
+     * @param inputRate sample rate of the PCM in Hz
+     * @param sampleRate sample rate to decode at in Hz
+     * @return every image found, in recording order
+     * @throws InterruptedException if interrupted while waiting for the decoders
+     */
+    public static List<Reception> decode(ByteBuffer pcm, int inputRate, int sampleRate) throws InterruptedException {
+        return decode(pcm, inputRate, sampleRate, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decodes headerless 16-bit little-endian mono PCM
+     * @param pcm samples from the buffer position to its limit, the position is left unchanged
+     * @param inputRate sample rate of the PCM in Hz
+     * @param sampleRate sample rate to decode at in Hz
+     * @param executor executor running the pre-scan and decoding tasks
+     * @return every image found, in recording order
+     * @throws InterruptedException if interrupted while waiting for the decoders
+     */
+    public static List<Reception> decode(ByteBuffer pcm, int inputRate, int sampleRate, ExecutorService executor)
+            throws InterruptedException {
+        ShortBuffer samples = pcm.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        return decode((from, count) -> samples.slice((int)from, count), samples.limit(), inputRate, sampleRate, executor);
+    }
+
+    /**
+     * Decodes a mono recording straight from its mapped file
+     * @param reader recording to decode, not closed by this method
+     * @param sampleRate sample rate to decode at in Hz, or 0 for the rate of the recording
+     * @param executor executor running the pre-scan and decoding tasks
+     * @return every image found, in recording order
+     * @throws InterruptedException if interrupted while waiting for the decoders
+     */
+    public static List<Reception> decode(WavReader reader, int sampleRate, ExecutorService executor)
+            throws InterruptedException {
+        if(reader.getChannels() != 1) throw new IllegalArgumentException("Expected mono audio but got " + reader.getFormat());
+        int inputRate = reader.getSampleRate();
+        return decode(reader::window, reader.getFrameCount(), inputRate, sampleRate > 0 ? sampleRate : inputRate, executor);
+    }
+
+    // Views of the recording the tasks read their ranges from, never copied as a whole
+    @FunctionalInterface
+    private interface Source {
+        ShortBuffer window(long from, int count);
+    }
+
+    private static List<Reception> decode(Source source, long total, int inputRate, int sampleRate, ExecutorService executor)
+            throws InterruptedException {
+
+        // Pass 1: hunt overlapping chunks for VIS headers, one chunk per thread
+        long chunk = Math.max(Math.round(SCAN_CHUNK_SECONDS * inputRate), (total + parallelism(executor) - 1) / parallelism(executor));
+        long overlap = Math.round(SCAN_OVERLAP_SECONDS * inputRate);
+        List<Callable<List<Header>>> scans = new ArrayList<>();
+        for(long from = 0; from < total; from += chunk) {
+            long start = from, end = Math.min(total, from + chunk + overlap);
+            scans.add(() -> scan(source, start, end, inputRate, sampleRate));
+        }
+        List<Header> headers = new ArrayList<>();
+        for(List<Header> found : run(executor, scans)) headers.addAll(found);
+        headers = transmissions(headers, inputRate);
+
+        // Pass 2: decode each transmission from its frame start to past its end, short of the next header
+        long vis = Math.round(VIS_SECONDS * inputRate);
+        List<Callable<List<Reception>>> segments = new ArrayList<>(headers.size());
+        for(int i = 0; i < headers.size(); i++) {
+            Header header = headers.get(i);
+            long end = Math.min(total, header.end);
+            if(i + 1 < headers.size()) end = Math.min(end, headers.get(i + 1).position - vis);
+            long last = end;
+            segments.add(() -> decodeSegment(source, header, last, inputRate, sampleRate));
+        }
+        List<Reception> receptions = new ArrayList<>();
+        for(List<Reception> decoded : run(executor, segments)) receptions.addAll(decoded);
+        return receptions;
+    }
+
+    // Start of a frame found by the pre-scan
+    private static final class Header {
+        final long position; // Input sample where the frame starts
+        final Mode mode;
+        long end;            // Input sample where decoding may stop
+
+        Header(long position, Mode mode) {
+            this.position = position;
+            this.mode = mode;
+        }
+    }
+
+    // Hunts a range of the recording for VIS headers, skipping the frames they announce
+    private static List<Header> scan(Source source, long from, long to, int inputRate, int sampleRate) {
+        HeaderCollector headers = new HeaderCollector(from);
+        SSTVDecoder decoder = new SSTVDecoder(headers, inputRate, sampleRate);
+        headers.decoder = decoder;
+        decoder.setHeadersOnly(true);
+        feed(decoder, source, from, to);
+        return headers.found;
+    }
+
+    // Decodes a transmission with a decoder of its own, from the frame start found by the pre-scan
+    private static List<Reception> decodeSegment(Source source, Header header, long to, int inputRate, int sampleRate) {
+        ReceptionCollector receptions = new ReceptionCollector(header.position, inputRate);
+        SSTVDecoder decoder = new SSTVDecoder(receptions, inputRate, sampleRate);
+        receptions.decoder = decoder;
+        decoder.beginFrame(header.mode);
+        feed(decoder, source, header.position, to);
+        return receptions.found;
+    }
+
+    // Pre-scan listener: positions and modes of the headers
+    private static final class HeaderCollector implements DecoderListener {
+        private final long offset; // Position of the range in the recording
+        private final List<Header> found = new ArrayList<>();
+        private SSTVDecoder decoder;
+
+        HeaderCollector(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void frameStarted(Mode mode) {
+            found.add(new Header(offset + decoder.getPosition(), mode));
+        }
+
+        @Override
+        public void lineDecoded(int y, int[] rgb) {}
+
+        @Override
+        public void frameCompleted() {}
+    }
+
+    // Segment listener: images with the time their frame started
+    private static final class ReceptionCollector extends FrameCollector {
+        private final long offset; // Position of the range in the recording
+        private final int inputRate;
+        private final List<Reception> found = new ArrayList<>();
+        private SSTVDecoder decoder;
+        private Mode mode;
+        private long position;
+
+        ReceptionCollector(long offset, int inputRate) {
+            this.offset = offset;
+            this.inputRate = inputRate;
+        }
+
+        @Override
+        public void frameStarted(Mode started) {
+            super.frameStarted(started);
+            mode = started;
+            position = offset + decoder.getPosition();
+        }
+
+        @Override
+        public void frameCompleted() {
+            int before = getImages().size();
+            super.frameCompleted();
+            if(getImages().size() > before) {
+                found.add(new Reception(getImages().get(before), mode, (double)position / inputRate));
+            }
+        }
+    }
+
+    private static void feed(SSTVDecoder decoder, Source source, long from, long to) {
+        for(long at = from; at < to; at += CHUNK_SAMPLES) {
+            decoder.processAudio(source.window(at, (int)Math.min(CHUNK_SAMPLES, to - at)));
+        }
+        decoder.finish();
+    }
+
+    // Headers of the pre-scan in order, without the duplicates of the chunk overlaps or headers inside an earlier
+    // frame, each with the end of the audio its segment has to decode
+    private static List<Header> transmissions(List<Header> headers, int inputRate) {
+        List<Header> sorted = new ArrayList<>(headers);
+        sorted.sort((a, b) -> Long.compare(a.position, b.position));
+        List<Header> kept = new ArrayList<>();
+        Header current = null;
+        long frameEnd = Long.MIN_VALUE; // Nominal end of the frames of the current segment
+        for(Header header : sorted) {
+            double frameMs = header.mode.getFrameMs();
+            long end = header.position + Math.round(frameMs * inputRate / 1000);
+            long tail = Math.round((TAIL_SECONDS + TAIL_SHARE * frameMs / 1000) * inputRate);
+            if(current != null && header.position < frameEnd) {
+                frameEnd = Math.max(frameEnd, end);
+                current.end = Math.max(current.end, end + tail);
+                continue;
+            }
+            current = header;
+            current.end = end + tail;
+            frameEnd = end;
+            kept.add(current);
+        }
+        return Collections.unmodifiableList(kept);
+    }
+
+    // Threads the executor runs tasks on, as far as it can be told
+    private static int parallelism(ExecutorService executor) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if(executor instanceof ForkJoinPool) return Math.max(1, Math.min(cores, ((ForkJoinPool)executor).getParallelism()));
+        if(executor instanceof ThreadPoolExecutor) return Math.max(1, Math.min(cores, ((ThreadPoolExecutor)executor).getMaximumPoolSize()));
+        return cores;
+    }
+
+    // Runs every task and gathers their results in task order
+    private static <T> List<T> run(ExecutorService executor, List<Callable<T>> tasks) throws InterruptedException {
+        List<T> results = new ArrayList<>(tasks.size());
+        for(Future<T> future : executor.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Decoding failed", e.getCause());
+            }
+        }
+        return results;
+    }
+}
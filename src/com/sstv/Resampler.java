@@ -0,0 +1,226 @@
+package src.com.sstv;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Streaming polyphase sample rate converter for 16-bit PCM between any two integer rates.
+ * <p>
+ * The rate change is the reduced fraction up/down of the two rates. Conceptually the input is upsampled by
+ * {@code up}, low-pass filtered below the Nyquist frequency of the lower rate and decimated by {@code down};
+ * the polyphase form only evaluates the filter taps that land on real input samples at the output instants,
+ * so each output sample costs one short dot product whatever the ratio. The filter is a Kaiser-windowed sinc
+ * with about 80 dB of stopband attenuation, cut off at the Nyquist frequency of the lower rate. Its length
+ * follows from the passband to keep: aliases may land above the passband but not in it, so a narrow
+ * passband (the SSTV band ends at 2300 Hz) leaves a wide transition band and needs only a few taps.
+ * <p>
+ * Output positions are tracked as an exact integer phase, so the number of output samples never drifts from
+ * the rate ratio however the input is chunked. The output is delayed by half the filter length.
+ * <p>
+ * The dot products run on the {@link SignalKernels} selected at startup. Each phase is padded with leading
+ * zero taps to a whole number of vectors, so the vector kernels never fall back to a scalar tail.
+ */
+public class Resampler {
+    private static final double PASSBAND = 0.45;   // Default passband edge as a share of the lower rate
+    private static final double ATTENUATION = 80;  // Stopband attenuation in dB
+    private static final double BETA = 0.1102 * (ATTENUATION - 8.7); // Kaiser window shape for that attenuation
+
+    private final int inputRate, outputRate;
+    private final int up, down;          // Reduced rate ratio
+    private final int taps;              // Taps per output sample
+    private final int span;              // Taps padded to a whole number of kernel vectors
+    private final float[] coefficients;  // [phase * span + j], reversed so each phase runs forward over its inputs
+    private final SignalKernels kernels = SignalKernels.get();
+    private float[] input;               // span - 1 samples of history followed by the new samples
+    private final int stride, carry;     // Whole input samples and extra phase steps between output samples
+    private int next = 0;                // Input index of the next output sample, relative to the new samples
+    private int phase = 0;               // Filter phase of the next output sample, 0 to up - 1
+
+    /**
+     * Creates a converter that keeps 90% of the band of the lower rate
+     * @param inputRate input sample rate in Hz
+     * @param outputRate output sample rate in Hz
+     */
+    public Resampler(int inputRate, int outputRate) {
+        this(inputRate, outputRate, PASSBAND * Math.min(inputRate, outputRate));
+    }
+
+    /**
+     * Creates a converter
+     * @param inputRate input sample rate in Hz
+     * @param outputRate output sample rate in Hz
+     * @param passband highest frequency to keep free of aliases in Hz, below half the lower rate
+     */
+    public Resampler(int inputRate, int outputRate, double passband) {
+        double lower = Math.min(inputRate, outputRate);
+        if(inputRate < 1 || outputRate < 1 || passband <= 0 || passband >= lower / 2) {
+            throw new IllegalArgumentException("Invalid conversion " + inputRate + " -> " + outputRate + " Hz keeping " + passband + " Hz");
+        }
+        int gcd = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        this.stride = down / up;
+        this.carry = down % up;
+
+        // Kaiser's length estimate, in input samples, for a transition from the passband to its mirror image
+        double transition = (lower - 2 * passband) / inputRate;
+        this.taps = Math.max(2, (int)Math.ceil((ATTENUATION - 7.95) / (14.36 * transition)) + 1);
+        int lanes = kernels.getLanes();
+        this.span = (taps + lanes - 1) / lanes * lanes;
+        this.coefficients = design(up, taps, span, lower / 2 / ((double)inputRate * up));
+        this.input = new float[span - 1 + 4096];
+    }
+
+    public int getInputRate() { return inputRate; }
+    public int getOutputRate() { return outputRate; }
+
+    /**
+     * Gets the filter length
+     * @return input samples weighted for every output sample
+     */
+    public int getTaps() { return taps; }
+
+    /**
+     * Gets the largest number of output samples a call can produce
+     * @param inputCount number of input samples of the call
+     * @return output capacity needed
+     */
+    public int getMaxOutput(int inputCount) {
+        return (int)(((long)inputCount * up + down - 1) / down) + 1;
+    }
+
+    /**
+     * Converts a block of samples
+     * @param samples input samples
+     * @param offset first input sample
+     * @param count number of input samples
+     * @param output destination, at least {@link #getMaxOutput(int)} samples long
+     * @return number of output samples produced
+     */
+    public int process(short[] samples, int offset, int count, short[] output) {
+        float[] x = prepare(count);
+        for(int i = 0; i < count; i++) {
+            x[span - 1 + i] = samples[offset + i];
+        }
+        return filter(count, output);
+    }
+
+    /**
+     * Converts the samples of a buffer, such as a view of a mapped file
+     * @param samples input samples from the buffer position to its limit, the position is left unchanged
+     * @param output destination, at least {@link #getMaxOutput(int)} samples long
+     * @return number of output samples produced
+     */
+    public int process(ShortBuffer samples, short[] output) {
+        int count = samples.remaining();
+        float[] x = prepare(count);
+        int from = samples.position();
+        for(int i = 0; i < count; i++) {
+            x[span - 1 + i] = samples.get(from + i);
+        }
+        return filter(count, output);
+    }
+
+    /**
+     * Converts a block of 16-bit little-endian PCM
+     * @param pcm input bytes
+     * @param offset first input byte
+     * @param length number of input bytes (an odd trailing byte is ignored)
+     * @param output destination, at least {@link #getMaxOutput(int)} samples long for length / 2 input samples
+     * @return number of output samples produced
+     */
+    public int process(byte[] pcm, int offset, int length, short[] output) {
+        int count = length >> 1;
+        float[] x = prepare(count);
+        for(int i = 0; i < count; i++) {
+            int b = offset + 2 * i;
+            x[span - 1 + i] = (short)((pcm[b] & 0xFF) | (pcm[b + 1] << 8));
+        }
+        return filter(count, output);
+    }
+
+    /**
+     * Forgets the signal seen so far, as if the converter had just been created
+     */
+    public void reset() {
+        Arrays.fill(input, 0, span - 1, 0);
+        next = 0;
+        phase = 0;
+    }
+
+    // Make room for the new samples after the history
+    private float[] prepare(int count) {
+        if(input.length < span - 1 + count) {
+            float[] grown = new float[span - 1 + count];
+            System.arraycopy(input, 0, grown, 0, span - 1);
+            input = grown;
+        }
+        return input;
+    }
+
+    // Produce every output sample whose filter window ends within the new samples, then keep the history
+    private int filter(int count, short[] output) {
+        float[] x = input;
+        int produced = 0;
+        while(next < count) {
+            long value = Math.round(kernels.dot(coefficients, phase * span, x, next, span));
+            output[produced++] = (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+
+            next += stride;
+            phase += carry;
+            if(phase >= up) {
+                phase -= up;
+                next++;
+            }
+        }
+        next -= count;
+        System.arraycopy(x, count, x, 0, span - 1);
+        return produced;
+    }
+
+    // Polyphase split of a Kaiser-windowed sinc low-pass, with a gain of one per phase
+    private static float[] design(int up, int taps, int span, double cutoff) {
+        int length = up * taps;
+        double centre = (length - 1) / 2.0;
+        double norm = besselI0(BETA);
+        double[] prototype = new double[length];
+        for(int m = 0; m < length; m++) {
+            double t = m - centre;
+            double sinc = t == 0 ? 1 : Math.sin(2 * Math.PI * cutoff * t) / (2 * Math.PI * cutoff * t);
+            double r = 2 * t / (length - 1);
+            double window = besselI0(BETA * Math.sqrt(Math.max(0, 1 - r * r))) / norm;
+            prototype[m] = 2 * cutoff * up * sinc * window;
+        }
+
+        // Output phase p weights input x[n - k] with prototype[p + k * up], stored oldest input first after the padding
+        float[] coefficients = new float[up * span];
+        for(int p = 0; p < up; p++) {
+            for(int k = 0; k < taps; k++) {
+                coefficients[p * span + (span - 1 - k)] = (float)prototype[p + k * up];
+            }
+        }
+        return coefficients;
+    }
+
+    // Modified Bessel function of the first kind, order zero (power series)
+    private static double besselI0(double x) {
+        double sum = 1, term = 1, half = x / 2;
+        for(int k = 1; k < 50; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+            if(term < 1e-12 * sum) break;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while(b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -1,229 +1,840 @@
 package src.com.sstv;
 
-import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.List;
 import javax.sound.sampled.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Iterator;
 
+/**
+ * SSTV decoding core: turns 16-bit mono PCM into image lines.
+ * The decoder has no GUI of its own, it reports everything through a {@link DecoderListener}.
+ * Audio can come from a live input ({@link #startDecoding()}), be pushed in chunks
+ * ({@link #processAudio(byte[], int, int)}), or be decoded offline with the static {@code decode} methods.
+ * <p>
+ * Input and decoding sample rates are set per decoder. When they differ, the input goes through a
+ * {@link Resampler} first: the SSTV band ends at 2300 Hz, so decoding at 11025 or 8000 Hz works as well as at
+ * 44100 Hz for a fraction of the work. All timing is kept in exact time and converted to samples at the
+ * decoding rate, so no rate accumulates rounding drift.
+ */
 public class SSTVDecoder {
     // Constants for SSTV decoding
-    private static final int SAMPLE_RATE = 44100; // Audio sample rate
-    private static final int VIS_CODE = 0x3C;     // Scottie DX VIS code (0b00111100)
-    private static final int WIDTH = 320;         // Image width
-    private static final int HEIGHT = 256;        // Image height
-
-    // Add Scottie DX timing constants
-    private static final double SYNC_MS = 9.0;
-    private static final double PORCH_MS = 1.5;
-    private static final double SCAN_MS = 345.6;
-    private static final double LINE_MS = 508.3;
+    public static final int DEFAULT_SAMPLE_RATE = 44100; // Input and decoding sample rate unless configured
+    private static final int CAPTURE_BLOCK_BYTES = 4096; // Live input read at a time, about 46 ms at 44100 Hz
+    private static final int CHUNK_SAMPLES = 4096;    // Recorded samples fed to the decoder at a time
+    private static final int CAPTURE_BLOCKS = 64;     // Blocks decoding may lag behind the live input (about 3 s)
+    private static final double PASSBAND = 3000;      // Highest frequency resampling keeps free of aliases (VIS to white)
+    private static final double VIS_BIT_MS = 30.0;    // Duration of every VIS bit
+    private static final int VIS_WINDOWS = 11;        // Leader tail, start bit, 7 data bits, parity, stop bit
+
+    private static final double HUNT_HOP_MS = 1.0;    // How far VIS hunting slides after a miss
+    private static final double VIS_REFINE_MS = 30.0; // How far past a first VIS match to look for the best alignment
+    private static final double VIS_PURITY = 0.05;    // Share of the window energy the leader and start bit must hold
+
+    private static final double SYNC_SEARCH_MS = 3.0; // How far from its predicted position a line sync is searched
+    private static final double SYNC_PURITY = 0.15;   // Share of the window energy a sync pulse must hold to be trusted
+    private static final double RELOCK_SPREAD = 150;  // How far in Hz above the lowest sync reading a relock candidate may be
+    private static final int SYNC_RELOCK_LINES = 2;   // Missed syncs in a row before searching a whole line for one
+    private static final int SYNC_LOST_LINES = 10;    // Missed syncs in a row before the frame is given up
+    private static final double MAX_SLANT = 0.005;    // Largest line period error corrected, as a share of the period
+    private static final int MAX_LINE_SEGMENTS = maxLineSegments(); // Most segments in a line of any mode
     
+    // Tone detector bank bins
+    private static final int ONE_BIN = 0;             // VIS one bit, 1100 Hz
+    private static final int SYNC_BIN = 1;            // Sync and VIS framing, 1200 Hz
+    private static final int ZERO_BIN = 2;            // VIS zero bit, 1300 Hz
+    private static final int LEADER_BIN = 3;          // VIS leader, 1900 Hz
+
     // Decoding states for finite state machine
-    private enum DecodeState { VIS, SYNC, PORCH, LINE }
+    private enum DecodeState { VIS, LINE }
     
-    private final PreviewPanel previewPanel;                        // GUI component for preview
-    private final Queue<Short> audioBuffer = new LinkedList<>();    // Buffer for storing audio samples
+    private final DecoderListener listener;                         // Consumer of decoded lines
+    private final int inputRate;                                    // Sample rate of the audio fed in
+    private final int sampleRate;                                   // Sample rate the audio is decoded at
+    private final Resampler resampler;                              // Input to decoding rate, null if they match
+    private short[] resampled = new short[0];                       // Reusable output of the resampler
+    private float[] window = new float[0];                          // Reusable analysis window
+    final SampleRingBuffer audioBuffer = new SampleRingBuffer(1 << 16); // Buffer for storing audio samples (package-private for the benchmarks)
+    private final FrequencyDemodulator demodulator;                 // Scan frequency tracker
+    private final ToneDetector tones;                               // Shared detectors for the header tones
+    private final DecoderMetrics metrics;                           // Counters readable from any thread
+    private boolean draining = false;                               // Input has ended, decode with what is buffered
+    private boolean headersOnly = false;                            // Pre-scan: report VIS headers, skip their frames
+    private long skipping = 0;                                      // Samples of a skipped frame still to discard
+    private long consumedTotal = 0;                                 // Samples consumed since the start of the input
+    private long skippedInput = 0;                                  // Input samples of skipped frames never buffered
     private DecodeState state = DecodeState.VIS;                    // Current decoding state
     
     // Image construction variables
-    private int currentLine = 0;                                    // Current image line being decoded
-    private int[] greenPixels = new int[WIDTH];                     // Green channel buffer
-    private int[] bluePixels = new int[WIDTH];                      // Blue channel buffer
-    private int[] redPixels = new int[WIDTH];                       // Red channel buffer
-    private int colorChannel = 0;                                   // Current color channel (0=G, 1=B, 2=R)
+    private Mode mode;                                              // Mode of the frame being received
+    private int currentLine = 0;                                    // Transmitted line being decoded
+    private long frameConsumed = 0;                                 // Samples consumed since the end of the VIS header
+    private int[][][] scans;                                        // Decoded scan values [channel][row][x]
+    private int[] linePixels;                                       // Combined RGB row handed to the listener
+    private int visScore;                                           // Alignment score of the last decoded VIS header
+    private boolean visFramed;                                      // The last VIS check found a leader and start bit
+    private boolean visCandidate;                                   // Hunting is inside a run of framed VIS checks
+
+    // Line timing, fitted to the sync pulses found so far: position error r = a + b * line
+    private double syncOffsetMs;                                    // Start of the sync within a line, or -1 without one
+    private double syncMs;                                          // Duration of that sync
+    private int syncLocks, syncMisses;                              // Syncs found in this frame, and missed in a row
+    private double sumK, sumR, sumKK, sumKR;                        // Least-squares sums of (line, error) pairs
+    private double lineShift;                                       // Timing correction of the current line in samples
+    private double syncFoundPurity;                                 // 1200 Hz purity of the last sync found
+    private final int[] segmentStarts = new int[MAX_LINE_SEGMENTS]; // Reusable sample bounds of the segments of a line
+    private final int[] segmentEnds = new int[MAX_LINE_SEGMENTS];
+
+    // Per-frame sync statistics, reported when the frame ends
+    private int frameLocks, frameMisses, frameSlips;
+    private double framePurity;                                     // Sum of the purity of the syncs found
+
+    /**
+     * Creates a decoder for audio at the default sample rate that reports to the given listener
+     * @param listener consumer of decoded frames and lines
+     */
+    public SSTVDecoder(DecoderListener listener) {
+        this(listener, DEFAULT_SAMPLE_RATE, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Creates a decoder that reports to the given listener
+     * @param listener consumer of decoded frames and lines
+     * @param inputRate sample rate of the audio fed to the decoder in Hz
+     * @param sampleRate sample rate to decode at in Hz, at least 8000; the input is resampled when it differs
+     */
+    public SSTVDecoder(DecoderListener listener, int inputRate, int sampleRate) {
+        if(sampleRate < 8000) throw new IllegalArgumentException("Decoding needs at least 8000 Hz, not " + sampleRate);
+        this.listener = listener;
+        this.inputRate = inputRate;
+        this.sampleRate = sampleRate;
+        this.resampler = inputRate == sampleRate ? null : new Resampler(inputRate, sampleRate, PASSBAND);
+        this.demodulator = new FrequencyDemodulator(sampleRate);
+        this.tones = new ToneDetector(sampleRate, 1100, Mode.SYNC_FREQ, 1300, Mode.LEADER_FREQ);
+        this.metrics = new DecoderMetrics(inputRate);
+    }
+
+    /**
+     * Gets the default PCM format of the decoder: mono, 16-bit, signed, little-endian at {@link #DEFAULT_SAMPLE_RATE}
+     * @return audio format
+     */
+    public static AudioFormat getFormat() {
+        return getFormat(DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Gets the PCM format the decoder expects at a sample rate: mono, 16-bit, signed, little-endian
+     * @param sampleRate sample rate in Hz
+     * @return audio format
+     */
+    public static AudioFormat getFormat(int sampleRate) {
+        return new AudioFormat(sampleRate, 16, 1, true, false);
+    }
+
+    /**
+     * Gets the PCM format this decoder is fed with
+     * @return audio format at the input rate
+     */
+    public AudioFormat getInputFormat() {
+        return getFormat(inputRate);
+    }
 
-    public SSTVDecoder() {
-        previewPanel = new PreviewPanel(WIDTH, HEIGHT, 2);    // Initialize preview panel
-        JFrame frame = new JFrame("SSTV Decoder");            // Set up main window
-        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-        frame.add(previewPanel);
-        frame.pack();
-        frame.setVisible(true);
+    public int getInputRate() { return inputRate; }
+    public int getSampleRate() { return sampleRate; }
+
+    /**
+     * Switches to pre-scanning: every VIS header found is reported with {@link DecoderListener#frameStarted(Mode)}
+     * and its frame is skipped for its nominal duration instead of being decoded. No lines are reported.
+     * @param headersOnly true to only look for headers
+     */
+    void setHeadersOnly(boolean headersOnly) {
+        this.headersOnly = headersOnly;
     }
 
+    /**
+     * Starts decoding a frame right away, as if its VIS header had just ended. Lets a transmission found by a
+     * pre-scan be decoded from its frame start, without hunting and resampling its header again.
+     * @param mode mode of the frame starting with the next sample fed to the decoder
+     */
+    void beginFrame(Mode mode) {
+        if(state != DecodeState.VIS || consumedTotal > 0 || !audioBuffer.isEmpty()) {
+            throw new IllegalStateException("A frame can only be begun before any audio is fed");
+        }
+        startFrame(mode);
+    }
+
+    /**
+     * Gets where the audio consumed so far ends, which is the start of the frame in
+     * {@link DecoderListener#frameStarted(Mode)}
+     * @return input samples since the first sample fed to the decoder
+     */
+    long getPosition() {
+        return skippedInput + Math.round(consumedTotal * (double)inputRate / sampleRate);
+    }
+
+    /**
+     * Gets the counters of this decoder: throughput, time per stage, buffer depth, VIS, sync and frame statistics.
+     * They are always kept and may be read from any thread, or exported with {@link DecoderMetrics#register(String)}.
+     * @return live metrics
+     */
+    public DecoderMetrics getMetrics() { return metrics; }
+
+    /**
+     * Decodes a recorded WAV (or any other format Java Sound can read) file at its own sample rate
+     * @param file recording to decode
+     * @return every image found in the recording, in order
+     * @throws IOException if the file cannot be read
+     * @throws UnsupportedAudioFileException if the file cannot be converted to the decoder format
+     */
+    public static List<BufferedImage> decode(File file) throws IOException, UnsupportedAudioFileException {
+        return decode(file, 0);
+    }
+
+    /**
+     * Decodes a recorded WAV (or any other format Java Sound can read) file, resampled to a given rate.
+     * Decoding at 11025 Hz is about as accurate as at 44100 Hz and takes far less work.
+     * Mono 16-bit PCM WAV files are memory-mapped with a {@link WavReader}, so they may be of any size.
+     * @param file recording to decode
+     * @param sampleRate sample rate to decode at in Hz, or 0 for the rate of the recording
+     * @return every image found in the recording, in order
+     * @throws IOException if the file cannot be read
+     * @throws UnsupportedAudioFileException if the file cannot be converted to the decoder format
+     */
+    public static List<BufferedImage> decode(File file, int sampleRate) throws IOException, UnsupportedAudioFileException {
+        try (WavReader reader = WavReader.open(file.toPath())) {
+            if(reader.getChannels() == 1) return decode(reader, sampleRate); // Mapped, of any size
+        } catch (UnsupportedAudioFileException e) {
+            // Not 16-bit PCM WAV, let Java Sound convert it
+        }
+        try (AudioInputStream audio = AudioSystem.getAudioInputStream(file)) {
+            return decode(audio, sampleRate);
+        }
+    }
+
+    /**
+     * Decodes a mono recording straight from its mapped file
+     * @param reader recording to decode, not closed by this method
+     * @param sampleRate sample rate to decode at in Hz, or 0 for the rate of the recording
+     * @return every image found in the recording, in order
+     */
+    public static List<BufferedImage> decode(WavReader reader, int sampleRate) {
+        if(reader.getChannels() != 1) throw new IllegalArgumentException("Expected mono audio but got " + reader.getFormat());
+        int inputRate = reader.getSampleRate();
+        FrameCollector collector = new FrameCollector();
+        SSTVDecoder decoder = new SSTVDecoder(collector, inputRate, sampleRate > 0 ? sampleRate : inputRate);
+        long total = reader.getFrameCount();
+        for(long from = 0; from < total; from += CHUNK_SAMPLES) {
+            decoder.processAudio(reader.window(from, (int)Math.min(CHUNK_SAMPLES, total - from)));
+        }
+        decoder.finish();
+        return collector.getImages();
+    }
+
+    /**
+     * Decodes a recorded audio stream with a WAV/AIFF/AU header.
+     * The stream is read as fast as it can be supplied, not at real-time speed.
+     * @param in stream to decode, not closed by this method
+     * @return every image found in the stream, in order
+     * @throws IOException if the stream cannot be read
+     * @throws UnsupportedAudioFileException if the stream cannot be converted to the decoder format
+     */
+    public static List<BufferedImage> decode(InputStream in) throws IOException, UnsupportedAudioFileException {
+        InputStream source = in.markSupported() ? in : new BufferedInputStream(in);
+        return decode(AudioSystem.getAudioInputStream(source), 0);
+    }
+
+    /**
+     * Decodes headerless PCM in the default decoder format (see {@link #getFormat()})
+     * @param pcm samples from the buffer position to its limit, the position is left unchanged
+     * @return every image found in the samples, in order
+     */
+    public static List<BufferedImage> decode(ByteBuffer pcm) {
+        return decode(pcm, DEFAULT_SAMPLE_RATE, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Decodes headerless 16-bit little-endian mono PCM
+     * @param pcm samples from the buffer position to its limit, the position is left unchanged
+     * @param inputRate sample rate of the PCM in Hz
+     * @param sampleRate sample rate to decode at in Hz
+     * @return every image found in the samples, in order
+     */
+    public static List<BufferedImage> decode(ByteBuffer pcm, int inputRate, int sampleRate) {
+        FrameCollector collector = new FrameCollector();
+        SSTVDecoder decoder = new SSTVDecoder(collector, inputRate, sampleRate);
+        ShortBuffer source = pcm.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        for(int from = 0; from < source.limit(); from += CHUNK_SAMPLES) {
+            decoder.processAudio(source.slice(from, Math.min(CHUNK_SAMPLES, source.limit() - from)));
+        }
+        decoder.finish();
+        return collector.getImages();
+    }
+
+    private static List<BufferedImage> decode(AudioInputStream audio, int sampleRate) throws IOException, UnsupportedAudioFileException {
+        AudioInputStream pcm = toInputFormat(audio);
+        int inputRate = Math.round(pcm.getFormat().getSampleRate());
+
+        FrameCollector collector = new FrameCollector();
+        SSTVDecoder decoder = new SSTVDecoder(collector, inputRate, sampleRate > 0 ? sampleRate : inputRate);
+        byte[] chunk = new byte[8192];
+        int bytesRead;
+        while((bytesRead = pcm.read(chunk, 0, chunk.length)) > 0) {
+            decoder.processAudio(chunk, 0, bytesRead);
+        }
+        decoder.finish();
+        return collector.getImages();
+    }
+
+    // Converts mono audio at a whole sample rate to 16-bit little-endian PCM at the same rate
+    static AudioInputStream toInputFormat(AudioInputStream audio) throws UnsupportedAudioFileException {
+        AudioFormat source = audio.getFormat();
+        int inputRate = Math.round(source.getSampleRate());
+        if(source.getChannels() != 1 || inputRate <= 0 || Math.abs(source.getSampleRate() - inputRate) > 0.01f) {
+            throw new UnsupportedAudioFileException("Expected mono audio at a whole sample rate but got " + source);
+        }
+        AudioFormat target = getFormat(inputRate);
+        return source.matches(target) ? audio : AudioSystem.getAudioInputStream(target, audio);
+    }
+
+    /**
+     * Decodes the default audio input on the calling thread until it is interrupted.
+     * The input is read on a separate high-priority capture thread and handed over through a {@link CaptureRing},
+     * so a slow decoding step never leaves the line unread. If decoding falls a whole ring behind, the newest
+     * audio is dropped and counted as an overrun instead of stalling the capture.
+     * @throws LineUnavailableException if the input cannot be opened
+     */
     public void startDecoding() throws LineUnavailableException {
         // Set up audio input format
-        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        AudioFormat format = getInputFormat();
         TargetDataLine line = AudioSystem.getTargetDataLine(format);
         line.open(format);
         line.start();
 
+        CaptureRing ring = new CaptureRing(CAPTURE_BLOCKS, CAPTURE_BLOCK_BYTES);
+        Thread capture = new Thread(() -> capture(line, ring), "sstv-capture");
+        capture.setDaemon(true);
+        capture.setPriority(Thread.MAX_PRIORITY); // Reading must keep up with the sound card, decoding can lag
+        capture.start();
+
         // Continuous audio processing loop
-        byte[] buffer = new byte[4096];
-        while (true) {
-            int bytesRead = line.read(buffer, 0, buffer.length);
-            processAudio(Arrays.copyOf(buffer, bytesRead));
+        try {
+            while (true) {
+                byte[] block = ring.take();
+                processAudio(block, 0, ring.peekLength());
+                ring.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            capture.interrupt();
+            line.close();
         }
     }
 
-    // Convert byte array to 16-bit samples and add to buffer
-    private void processAudio(byte[] bytes) {
-        for (int i = 0; i < bytes.length; i += 2) {
-            short sample = (short) ((bytes[i] & 0xFF) | (bytes[i+1] << 8));
-            audioBuffer.add(sample);
+    // Capture loop: only reads the line into free ring blocks, never allocates
+    private void capture(TargetDataLine line, CaptureRing ring) {
+        byte[] discard = new byte[ring.blockBytes()]; // Keeps the line drained while the ring is full
+        while(!Thread.currentThread().isInterrupted() && line.isOpen()) {
+            if(line.available() >= line.getBufferSize()) metrics.overrun(); // Fell behind, the card may have dropped audio
+            byte[] block = ring.claim();
+            if(block == null) {
+                int dropped = line.read(discard, 0, discard.length);
+                metrics.overrun();
+                metrics.dropped(dropped / 2);
+                continue;
+            }
+            int bytesRead = line.read(block, 0, block.length);
+            if(bytesRead > 0) ring.publish(bytesRead);
+        }
+    }
+
+    /**
+     * Gets the mode of the frame being received
+     * @return current mode, or null while hunting for a VIS header
+     */
+    public Mode getMode() {
+        return state == DecodeState.LINE ? mode : null;
+    }
+
+    /**
+     * Feeds a chunk of 16-bit little-endian PCM at the input rate into the decoder and decodes as far as possible
+     * @param bytes PCM bytes
+     * @param offset first byte to read
+     * @param length number of bytes to read
+     */
+    public void processAudio(byte[] bytes, int offset, int length) {
+        int skipped = skipInput(length >> 1);
+        offset += 2 * skipped;
+        length -= 2 * skipped;
+        if(skipped > 0 && length < 2) return;
+        if(resampler == null) {
+            audioBuffer.write(bytes, offset, length);
+        } else {
+            long start = System.nanoTime();
+            int capacity = resampler.getMaxOutput(length >> 1);
+            if(resampled.length < capacity) resampled = new short[capacity];
+            audioBuffer.write(resampled, 0, resampler.process(bytes, offset, length, resampled));
+            metrics.time(DecoderMetrics.Stage.RESAMPLE, System.nanoTime() - start);
+        }
+        metrics.chunk(length >> 1, audioBuffer.size());
+        processBuffer();
+    }
+
+    /**
+     * Feeds mono samples at the input rate into the decoder and decodes as far as possible.
+     * The samples are read straight from the buffer, so a view of a mapped file ({@link WavReader#window(long, int)})
+     * is only copied once, into the decoder's own buffer.
+     * @param samples samples from the buffer position to its limit, the position is left unchanged
+     */
+    public void processAudio(ShortBuffer samples) {
+        ShortBuffer input = samples;
+        int skipped = skipInput(samples.remaining());
+        if(skipped > 0) {
+            if(skipped == samples.remaining()) return;
+            input = samples.duplicate();
+            input.position(input.position() + skipped);
         }
+        int count = input.remaining();
+        if(resampler == null) {
+            audioBuffer.write(input);
+        } else {
+            long start = System.nanoTime();
+            int capacity = resampler.getMaxOutput(count);
+            if(resampled.length < capacity) resampled = new short[capacity];
+            audioBuffer.write(resampled, 0, resampler.process(input, resampled));
+            metrics.time(DecoderMetrics.Stage.RESAMPLE, System.nanoTime() - start);
+        }
+        metrics.chunk(count, audioBuffer.size());
+        processBuffer();
+    }
+
+    // Pre-scan: drops the rest of a skipped frame before resampling it, returns the input samples dropped
+    private int skipInput(int available) {
+        if(skipping <= 0 || !audioBuffer.isEmpty()) return 0;
+        int count = (int)Math.min(available, skipping * inputRate / sampleRate);
+        skippedInput += count;
+        skipping -= (long)count * sampleRate / inputRate;
+        if(count > 0 && resampler != null) resampler.reset();
+        return count;
+    }
+
+    /**
+     * Signals the end of the input. An image that was still being received is reported as completed.
+     */
+    public void finish() {
+        draining = true;
         processBuffer();
+        if(state != DecodeState.VIS) {
+            endFrame(false);
+        }
+        draining = false;
+        skipping = 0;
+        audioBuffer.clear();
+        tones.reset();
+        if(resampler != null) resampler.reset();
     }
 
     // Main decoding state machine
     private void processBuffer() {
-        while (audioBuffer.size() > 2048) { // Maintain manageable buffer size
+        long visNanos = 0, lineNanos = 0; // Added to the metrics once per call
+        long start = System.nanoTime();
+        while (true) {
+            int before = audioBuffer.size();
+            DecodeState stateBefore = state;
             switch (state) {
                 case VIS:
-                    if (checkVisHeader()) {
-                        state = DecodeState.SYNC;
-                        previewPanel.resetImage();
-                        currentLine = 0;
+                    if (skipping > 0) {
+                        int count = (int)Math.min(skipping, audioBuffer.size());
+                        consume(count);
+                        skipping -= count;
+                        break;
                     }
-                    break;
-                    
-                case SYNC:
-                    if (detectTone(1200, SYNC_MS)) { // 9ms 1200Hz sync pulse
-                        state = DecodeState.PORCH;
-                    }
-                    break;
-                    
-                case PORCH:
-                    if (detectTone(1500, PORCH_MS)) { // 1.5ms 1500Hz porch
-                        state = DecodeState.LINE;
-                        colorChannel = 0;
+                    Mode detected = checkVisHeader();
+                    if (detected != null && headersOnly) {
+                        listener.frameStarted(detected);
+                        skipping = Math.round(detected.getFrameMs() * sampleRate / 1000);
+                    } else if (detected != null) {
+                        startFrame(detected);
                     }
                     break;
                     
                 case LINE:
-                    if (processLine()) {
-                        state = DecodeState.SYNC;
-                        if (++currentLine >= HEIGHT) { // End of image
-                            state = DecodeState.VIS;
-                            currentLine = 0;
-                        }
+                    if (processLine() && ++currentLine >= mode.getLineCount()) { // End of image
+                        endFrame(false);
                     }
                     break;
             }
+
+            long now = System.nanoTime();
+            if (stateBefore == DecodeState.VIS) visNanos += now - start; else lineNanos += now - start;
+            start = now;
+            if (audioBuffer.size() == before && state == stateBefore) break; // Nothing consumed, wait for more samples
         }
+        metrics.time(DecoderMetrics.Stage.VIS, visNanos);
+        metrics.time(DecoderMetrics.Stage.LINE, lineNanos);
     }
 
-    // VIS header detection using FSK decoding
-    private boolean checkVisHeader() {
-        int bitDuration = 30; // ms per bit
-        int samplesPerBit = (int)(bitDuration * SAMPLE_RATE / 1000);
-        int requiredSamples = samplesPerBit * 10; // 8 bits + start/stop
-        
-        if (audioBuffer.size() < requiredSamples) return false;
-        
-        // Decode VIS bits (simplified without proper synchronization)
-        int visValue = 0;
-        Iterator<Short> it = audioBuffer.iterator();
-        
-        // Skip start bit (assuming 1100Hz)
-        for(int i=0; i<samplesPerBit; i++) it.next();
-        
-        // Decode 8 data bits (LSB first)
-        for(int bit=0; bit<8; bit++) {
-            double[] samples = new double[samplesPerBit];
-            for(int i=0; i<samplesPerBit; i++) {
-                samples[i] = it.next() / 32768.0;
-            }
-            double power1200 = calculatePower(samples, 1200);
-            double power1100 = calculatePower(samples, 1100);
-            
-            visValue |= (power1100 > power1200 ? 1 : 0) << bit;
+    private void startFrame(Mode detected) {
+        if(mode != detected) {
+            scans = new int[Mode.Channel.values().length][detected.getRowsPerLine()][detected.getWidth()];
+            linePixels = new int[detected.getWidth()];
         }
-        
-        // Check against expected VIS code
-        if(visValue == VIS_CODE) {
-            removeSamples(requiredSamples);
-            return true;
+        mode = detected;
+        state = DecodeState.LINE;
+        currentLine = 0;
+        frameConsumed = 0;
+
+        syncOffsetMs = -1;
+        double offsetMs = 0;
+        for(Mode.Segment segment : mode.getLineSegments()) {
+            if(segment.getKind() == Mode.Segment.Kind.SYNC) {
+                syncOffsetMs = offsetMs;
+                syncMs = segment.getDurationMs();
+                break;
+            }
+            offsetMs += segment.getDurationMs();
         }
-        return false;
+        syncLocks = 0;
+        syncMisses = 0;
+        sumK = sumR = sumKK = sumKR = 0;
+        frameLocks = frameMisses = frameSlips = 0;
+        framePurity = 0;
+        metrics.frameStarted();
+        listener.frameStarted(mode);
     }
 
-    // Tone detection using Goertzel algorithm
-    private boolean detectTone(double targetFreq, double durationMs) {
-        int samplesNeeded = (int)(durationMs * SAMPLE_RATE / 1000);
-        if(audioBuffer.size() < samplesNeeded) return false;
-        
-        // Extract samples without removing from buffer
-        double[] samples = new double[samplesNeeded];
-        Iterator<Short> it = audioBuffer.iterator();
-        for(int i=0; i<samplesNeeded; i++) {
-            samples[i] = it.next() / 32768.0;
+    // Back to VIS hunting, reporting the frame received so far
+    private void endFrame(boolean lost) {
+        state = DecodeState.VIS;
+        double purity = Math.min(framePurity / frameLocks, 0.999999); // NaN without any sync
+        double snr = 10 * Math.log10(purity / (1 - purity)); // The sync tone is the signal, the rest of its window noise
+        metrics.frameEnded(new DecoderMetrics.Frame(mode, currentLine, frameLocks, frameMisses, frameSlips, snr, lost));
+        listener.frameCompleted();
+    }
+
+    // VIS header detection: leader tail, start bit, 7 data bits (LSB first), even parity, stop bit
+    private Mode checkVisHeader() {
+        int samplesPerBit = samplesAt(VIS_BIT_MS);
+        int hop = samplesAt(HUNT_HOP_MS);
+        int refine = samplesAt(VIS_REFINE_MS);
+        if(audioBuffer.size() < samplesPerBit * VIS_WINDOWS + refine + hop) return null;
+        tones.track(audioBuffer); // Only samples not seen by an earlier attempt are processed
+
+        if(decodeVis(0, samplesPerBit) < 0) {
+            if(visFramed) {
+                visCandidate = true;
+            } else if(visCandidate) { // A run of leader and start bit matches ended without a header
+                visCandidate = false;
+                metrics.visCandidate(true);
+            }
+            consume(hop); // Slide the search window forward
+            return null;
         }
-        
-        double power = calculatePower(samples, targetFreq);
-        boolean detected = power > 0.2; // Empirical threshold
-        
-        if(detected) removeSamples(samplesNeeded);
+        visCandidate = false;
+        metrics.visCandidate(false);
+
+        // The first hit is usually early, keep sliding to the best aligned position
+        int bestOffset = 0, bestScore = visScore, bestCode = decodeVis(0, samplesPerBit);
+        for(int offset = hop; offset <= refine; offset += hop) {
+            int code = decodeVis(offset, samplesPerBit);
+            if(code >= 0 && visScore > bestScore) {
+                bestOffset = offset; bestScore = visScore; bestCode = code;
+            }
+        }
+        int coarse = bestOffset;
+        for(int offset = Math.max(0, coarse - hop); offset <= coarse + hop; offset += 2) {
+            int code = decodeVis(offset, samplesPerBit);
+            if(code >= 0 && visScore > bestScore) {
+                bestOffset = offset; bestScore = visScore; bestCode = code;
+            }
+        }
+
+        Mode detected = Mode.fromVisCode(bestCode);
+        consume(bestOffset + samplesPerBit * VIS_WINDOWS);
         return detected;
     }
 
-    // Process one image line (three color channels)
+    // Decodes a VIS header whose leader tail starts at offset, returns the code or -1 (score in visScore)
+    private int decodeVis(int offset, int samplesPerBit) {
+        double score = 0;
+        visFramed = false;
+
+        // Leader tail (1900 Hz) followed by the start bit (1200 Hz)
+        int from = offset, to = offset + samplesPerBit;
+        double leader = dominance(tones.power(LEADER_BIN, from, to), tones.power(SYNC_BIN, from, to));
+        if(leader < 0.6 || tones.purity(LEADER_BIN, from, to) < VIS_PURITY) return -1;
+        from = to; to += samplesPerBit;
+        double start = dominance(tones.power(SYNC_BIN, from, to), tones.power(LEADER_BIN, from, to));
+        if(start < 0.6 || tones.purity(SYNC_BIN, from, to) < VIS_PURITY) return -1;
+        score += leader + start;
+        visFramed = true;
+
+        // Data and parity bits: 1100 Hz is a one, 1300 Hz a zero
+        int bits = 0;
+        for(int bit = 0; bit < 8; bit++) {
+            from = to; to += samplesPerBit;
+            double one = tones.power(ONE_BIN, from, to);
+            double zero = tones.power(ZERO_BIN, from, to);
+            if(one > zero) bits |= 1 << bit;
+            score += Math.abs(dominance(one, zero) - 0.5) * 2;
+        }
+
+        // Stop bit (1200 Hz)
+        from = to; to += samplesPerBit;
+        double stop = dominance(tones.power(SYNC_BIN, from, to),
+                                tones.power(ONE_BIN, from, to) + tones.power(ZERO_BIN, from, to));
+        if(stop < 0.6) return -1;
+        score += stop;
+
+        if(Integer.bitCount(bits) % 2 != 0) return -1; // Even parity
+        int code = bits & 0x7F;
+        if(Mode.fromVisCode(code) == null) return -1;
+        visScore = (int)(score * 1000);
+        return code;
+    }
+
+    // Share of the total power held by the wanted tone
+    private static double dominance(double wanted, double other) {
+        return wanted / (wanted + other + 1e-12);
+    }
+
+    // Decode one transmitted line once all of its samples are buffered
     private boolean processLine() {
-        // Decode current color channel
-        int[] targetArray = null;
-        switch(colorChannel) {
-            case 0: targetArray = greenPixels; break;
-            case 1: targetArray = bluePixels; break;
-            case 2: targetArray = redPixels; break;
+        double lineStartMs = mode.getPreambleMs() + currentLine * mode.getLineMs();
+        int margin = samplesAt(SYNC_SEARCH_MS); // Kept behind each line, so the next sync may come early
+        int lookahead = draining ? 0 : demodulator.getDelay(); // The demodulator reads a little past the line
+        boolean searching = syncOffsetMs >= 0;
+        boolean relock = searching && syncMisses >= SYNC_RELOCK_LINES && !draining;
+
+        lineShift = timingShift(currentLine);
+        long needed = Math.round(position(lineStartMs + mode.getLineMs() * (relock ? 2 : 1))) + (draining ? 0 : margin);
+        if(audioBuffer.size() < needed - frameConsumed + lookahead) return false;
+
+        if(searching) {
+            double predicted = position(lineStartMs) - frameConsumed;
+            int found = relock ? relockLine(predicted) : trackSync(predicted + samplesAt(syncOffsetMs));
+            if(found != Integer.MIN_VALUE) {
+                addSync(found);
+                if(relock) {
+                    frameSlips++;
+                    metrics.syncSlipped();
+                }
+            } else {
+                frameMisses++;
+                metrics.syncMissed();
+                if(++syncMisses >= SYNC_LOST_LINES) { // Signal gone (or the VIS header was a false alarm)
+                    endFrame(true);
+                    return false;
+                }
+            }
+            // Otherwise keep following the fitted timing (flywheel)
+            lineShift = timingShift(currentLine);
         }
-        
-        if(!decodeColorChannel(SCAN_MS, targetArray)) 
-            return false;
 
-        if(++colorChannel < 3) 
-            return false; // Need more channels
+        double segmentMs = lineStartMs;
+        for(Mode.Segment segment : mode.getLineSegments()) {
+            if(segment.getKind() == Mode.Segment.Kind.SCAN) {
+                int from = (int)Math.max(0, Math.round(position(segmentMs)) - frameConsumed);
+                int to = (int)Math.min(audioBuffer.size(), Math.round(position(segmentMs + segment.getDurationMs())) - frameConsumed);
+                decodeScan(segment, from, Math.max(from + 1, to));
+            }
+            segmentMs += segment.getDurationMs();
+        }
 
-        // Combine all channels when all three are decoded
-        for(int x=0; x<WIDTH; x++) {
-            int rgb = (redPixels[x] << 16) | (greenPixels[x] << 8) | bluePixels[x];
-            previewPanel.setPixel(x, currentLine, rgb);
+        for(int row = 0; row < mode.getRowsPerLine(); row++) {
+            combineRow(row);
+            listener.lineDecoded(currentLine * mode.getRowsPerLine() + row, linePixels);
         }
+        metrics.line();
+
+        long consumed = Math.max(frameConsumed, Math.round(position(lineStartMs + mode.getLineMs())) - margin);
+        consume((int)(consumed - frameConsumed));
+        frameConsumed = consumed;
         return true;
     }
 
-    // Decode one color channel into specified buffer
-    private boolean decodeColorChannel(double durationMs, int[] target) {
-        int samplesNeeded = (int)(durationMs * SAMPLE_RATE / 1000);
-        if(audioBuffer.size() < samplesNeeded) return false;
-        
-        int samplesPerPixel = samplesNeeded / WIDTH;
-        for(int x=0; x<WIDTH; x++) {
-            target[x] = decodePixel(samplesPerPixel);
+    // Find the sync pulse of the current line near its predicted buffer position, returns its offset from the
+    // prediction in samples or Integer.MIN_VALUE if there is none. The frequency track gives the mean frequency
+    // of any span in O(1), so every sample offset is tried: the span holding exactly the pulse has the lowest
+    // mean, as everything around a sync is 1500 Hz or more. Noise pulls that mean towards the band centre,
+    // so whether the pulse is really there is judged by its 1200 Hz purity instead.
+    private int trackSync(double predicted) {
+        int length = samplesAt(syncMs);
+        int margin = samplesAt(SYNC_SEARCH_MS);
+        int centre = (int)Math.round(predicted);
+        int first = Math.max(0, centre - margin);
+        int last = Math.min(audioBuffer.size() - length, centre + margin);
+        if(last < first) return Integer.MIN_VALUE;
+
+        demodulator.demodulate(audioBuffer, first, last + length - first);
+        int best = first;
+        double bestFreq = Double.MAX_VALUE;
+        for(int at = first; at <= last; at++) {
+            double freq = demodulator.frequency(at - first, at - first + length);
+            if(freq < bestFreq) {
+                bestFreq = freq;
+                best = at;
+            }
         }
-        removeSamples(samplesNeeded);
-        return true;
+        syncFoundPurity = syncPurity(best, length);
+        if(syncFoundPurity < SYNC_PURITY) return Integer.MIN_VALUE;
+        return best - centre;
     }
 
-    // Decode single pixel value from audio samples
-    private int decodePixel(int samplesPerPixel) {
-        int samplesToUse = Math.min(samplesPerPixel, audioBuffer.size());
-        if(samplesToUse == 0) return 0;
-        
-        double[] samples = new double[samplesToUse];
-        for(int i=0; i<samplesToUse; i++) {
-            samples[i] = audioBuffer.poll() / 32768.0;
+    // After a slip (samples lost or inserted), search a whole line period for the start of a line by matching
+    // every fixed tone of the line (syncs, porches, separators), which also tells apart modes whose syncs repeat
+    // within a line. Returns the offset from the predicted line start folded into half a period either way,
+    // or Integer.MIN_VALUE if nothing matches.
+    private int relockLine(double predicted) {
+        List<Mode.Segment> segments = mode.getLineSegments();
+        int[] starts = segmentStarts, ends = segmentEnds;
+        int sync = -1;
+        double offsetMs = 0;
+        for(int i = 0; i < segments.size(); i++) {
+            if(sync < 0 && segments.get(i).getKind() == Mode.Segment.Kind.SYNC) sync = i;
+            starts[i] = samplesAt(offsetMs);
+            offsetMs += segments.get(i).getDurationMs();
+            ends[i] = samplesAt(offsetMs);
+        }
+        int period = samplesAt(mode.getLineMs());
+        int centre = (int)Math.round(predicted);
+        int first = Math.max(0, centre - period / 2);
+        int last = Math.min(audioBuffer.size() - period, centre + period);
+        if(last < first) return Integer.MIN_VALUE;
+
+        demodulator.demodulate(audioBuffer, first, last + period - first);
+        double lowest = Double.MAX_VALUE;
+        for(int at = first; at <= last; at++) {
+            lowest = Math.min(lowest, demodulator.frequency(at - first + starts[sync], at - first + ends[sync]));
+        }
+
+        int best = first;
+        double bestError = Double.MAX_VALUE;
+        for(int at = first; at <= last; at++) {
+            // Only positions with a sync pulse in place are worth matching in full
+            if(demodulator.frequency(at - first + starts[sync], at - first + ends[sync]) > lowest + RELOCK_SPREAD) continue;
+
+            double error = 0, weight = 0; // Mean frequency error of the tones, weighted by their length
+            for(int i = 0; i < segments.size(); i++) {
+                Mode.Segment segment = segments.get(i);
+                if(segment.getKind() == Mode.Segment.Kind.SCAN) continue;
+                double freq = demodulator.frequency(at - first + starts[i], at - first + ends[i]);
+                error += Math.abs(freq - segment.getFrequency()) * (ends[i] - starts[i]);
+                weight += ends[i] - starts[i];
+            }
+            if(error < bestError * weight) {
+                bestError = error / weight;
+                best = at;
+            }
+        }
+        syncFoundPurity = syncPurity(best + starts[sync], ends[sync] - starts[sync]);
+        if(syncFoundPurity < SYNC_PURITY) return Integer.MIN_VALUE;
+
+        syncLocks = 0; // The stream slipped: restart the fit from this line
+        sumK = sumR = sumKK = sumKR = 0;
+        int offset = best - centre;
+        return offset > period / 2 ? offset - period : offset;
+    }
+
+    // Share of the energy of a buffered window held by the sync tone
+    private double syncPurity(int offset, int length) {
+        float[] samples = window(length);
+        audioBuffer.peek(offset, samples, length);
+        double energy = 0;
+        for(int i = 0; i < length; i++) {
+            double x = samples[i]; // Squared in double, where the square of a 16-bit sample is exact
+            energy += x * x;
+        }
+        return calculatePower(samples, length, Mode.SYNC_FREQ) / (energy * length / 2 + 1e-12);
+    }
+
+    // Add the timing error of the current line to the fit, on top of the correction it was predicted with
+    private void addSync(int offset) {
+        double error = offset + lineShift;
+        syncLocks++;
+        syncMisses = 0;
+        frameLocks++;
+        framePurity += syncFoundPurity;
+        metrics.syncLocked(syncFoundPurity);
+        sumK += currentLine;
+        sumR += error;
+        sumKK += (double)currentLine * currentLine;
+        sumKR += currentLine * error;
+    }
+
+    // Timing correction of a line from the least-squares line through the sync errors (offset and slant)
+    private double timingShift(int line) {
+        if(syncLocks == 0) return 0;
+        double meanK = sumK / syncLocks, meanR = sumR / syncLocks;
+        double spread = sumKK - sumK * meanK;
+        double slope = 0;
+        if(syncLocks > 1 && spread > 0) {
+            double limit = MAX_SLANT * mode.getLineMs() * sampleRate / 1000;
+            slope = Math.max(-limit, Math.min(limit, (sumKR - sumK * meanR) / spread));
+        }
+        return meanR + slope * (line - meanK);
+    }
+
+    // Decode one scan into the channel buffer of its row (or every row for shared chroma)
+    private void decodeScan(Mode.Segment segment, int from, int to) {
+        int width = mode.getWidth();
+        int[][] channel = scans[segment.getChannel().ordinal()];
+        int[] target = channel[segment.getRow() == Mode.Segment.ALL_ROWS ? 0 : segment.getRow()];
+        decodeScan(from, to, target, width);
+        if(segment.getRow() == Mode.Segment.ALL_ROWS) {
+            for(int row = 1; row < channel.length; row++) {
+                System.arraycopy(target, 0, channel[row], 0, width);
+            }
+        }
+    }
+
+    // Convert the decoded channels of one row into packed RGB
+    private void combineRow(int row) {
+        int width = mode.getWidth();
+        if(mode.getColorSpace() == Mode.ColorSpace.RGB) {
+            int[] red = scans[Mode.Channel.RED.ordinal()][row];
+            int[] green = scans[Mode.Channel.GREEN.ordinal()][row];
+            int[] blue = scans[Mode.Channel.BLUE.ordinal()][row];
+            for(int x = 0; x < width; x++) {
+                linePixels[x] = (red[x] << 16) | (green[x] << 8) | blue[x];
+            }
+        } else {
+            int[] y = scans[Mode.Channel.Y.ordinal()][row];
+            int[] cb = scans[Mode.Channel.CB.ordinal()][row];
+            int[] cr = scans[Mode.Channel.CR.ordinal()][row];
+            for(int x = 0; x < width; x++) {
+                linePixels[x] = Color.rgbFromYCbCr(y[x], cb[x], cr[x]);
+            }
+        }
+    }
+
+    // Track the frequency of a scan and read the mean frequency of every pixel from it
+    void decodeScan(int from, int to, int[] target, int width) {
+        int count = to - from;
+        demodulator.demodulate(audioBuffer, from, count);
+
+        double toValue = 255.0 / (Mode.WHITE_FREQ - Mode.BLACK_FREQ);
+        for(int x = 0; x < width; x++) {
+            int start = (int)((long)count * x / width);
+            int end = Math.max(start + 1, (int)((long)count * (x + 1) / width));
+            long value = Math.round((demodulator.frequency(start, end) - Mode.BLACK_FREQ) * toValue);
+            target[x] = (int)Math.max(0, Math.min(255, value));
         }
-        
-        // Calculate power at both ends of SSTV frequency range
-        double powerLow = calculatePower(samples, 1500);
-        double powerHigh = calculatePower(samples, 2300);
-        double ratio = powerHigh / (powerLow + powerHigh + 1e-12); // Avoid division by zero
-        
-        return (int)(ratio * 255);
     }
 
-    // Goertzel algorithm implementation
-    private double calculatePower(double[] samples, double targetFreq) {
-        double omega = 2 * Math.PI * targetFreq / SAMPLE_RATE;
-        double coeff = 2 * Math.cos(omega);
+    // Goertzel algorithm implementation, coefficients of the bank frequencies are cached
+    double calculatePower(float[] samples, int count, double targetFreq) {
+        int bin = tones.indexOf(targetFreq);
+        double coeff = bin >= 0 ? tones.getCoefficient(bin) : 2 * Math.cos(2 * Math.PI * targetFreq / sampleRate);
         double q0 = 0, q1 = 0, q2 = 0;
         
-        for(double sample : samples) {
-            q0 = coeff * q1 - q2 + sample;
+        for(int i=0; i<count; i++) {
+            q0 = coeff * q1 - q2 + samples[i];
             q2 = q1;
             q1 = q0;
         }
@@ -231,10 +842,32 @@ public class SSTVDecoder {
         return q1*q1 + q2*q2 - coeff*q1*q2;
     }
 
-    // Remove processed samples from buffer
-    private void removeSamples(int count) {
-        for(int i=0; i<count && !audioBuffer.isEmpty(); i++) {
-            audioBuffer.poll();
-        }
+    // Drop samples from the head of the buffer, keeping the tone track aligned with it
+    private void consume(int count) {
+        audioBuffer.skip(count);
+        tones.discard(count);
+        consumedTotal += count;
+    }
+
+    // Exact sample position of a point in frame time, corrected by the timing of the current line
+    private double position(double ms) {
+        return ms * sampleRate / 1000 + lineShift;
+    }
+
+    // Shared analysis window, only reallocated when a longer window is requested
+    private float[] window(int count) {
+        if(window.length < count) window = new float[count];
+        return window;
+    }
+
+    private static int maxLineSegments() {
+        int most = 0;
+        for(Mode mode : Mode.values()) most = Math.max(most, mode.getLineSegments().size());
+        return most;
+    }
+
+    // Sample index of a point in time, rounded from the exact time so offsets never drift
+    private int samplesAt(double ms) {
+        return (int)Math.round(ms * sampleRate / 1000);
     }
-}
\ No newline at end of file
+}
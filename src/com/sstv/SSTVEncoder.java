@@ -3,14 +3,17 @@ package src.com.sstv;
 import javax.sound.sampled.LineUnavailableException;
 
 public class SSTVEncoder {
-    // Add Scottie DX timing constants
-    public static final double SYNC_MS = 9.0;
-    public static final double PORCH_MS = 1.5;
-    public static final double SCAN_MS = 345.6;
-    public static final double LINE_MS = 508.3;
+    /** @deprecated Scottie DX timing, use the segments of {@link Mode#SCOTTIE_DX} */
+    @Deprecated public static final double SYNC_MS = 9.0;
+    /** @deprecated Scottie DX timing, use the segments of {@link Mode#SCOTTIE_DX} */
+    @Deprecated public static final double PORCH_MS = 1.5;
+    /** @deprecated Scottie DX timing, use the segments of {@link Mode#SCOTTIE_DX} */
+    @Deprecated public static final double SCAN_MS = 345.6;
+    /** @deprecated Scottie DX timing, use {@link Mode#getLineMs()} */
+    @Deprecated public static final double LINE_MS = 1050.3;
 
     /**
-     * Play a sync pulse (1200 Hz for specified duration)
+     * Queue a sync pulse (1200 Hz for specified duration) right after the sounds queued before it
      * @param durationMs 
      * @throws LineUnavailableException
      */
@@ -19,7 +22,7 @@ public class SSTVEncoder {
     }
 
     /**
-     * Play a porch (1500 Hz for specified duration)
+     * Queue a porch (1500 Hz for specified duration) right after the sounds queued before it
      * @param durationMs
      * @throws LineUnavailableException
      */
@@ -28,7 +31,8 @@ public class SSTVEncoder {
     }
 
     /**
-     * Play a scan line for a color channel
+     * Queue a scan line for a color channel right after the sounds queued before it.
+     * Use {@link Sound#drain()} to wait until everything queued has been played
      * @param frequencies
      * @param durationMs
      * @throws LineUnavailableException
@@ -3,151 +3,518 @@ package src.com.sstv;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 import javax.imageio.ImageIO;
+import javax.sound.sampled.LineUnavailableException;
 
+/**
+ * Encodes images as SSTV audio in any of the supported {@link Mode}s (Scottie DX by default).
+ * Audio is produced one scan line at a time into a {@link PcmSink}, so memory stays bounded
+ * to a single line and playback starts as soon as the first line is ready.
+ * Each encoder instance owns its oscillator phase: an instance must not be shared between threads,
+ * but any number of instances can encode in parallel (see {@link #encodeAll(List, ExecutorService)}).
+ * A single image can also be rendered on all cores with {@link #encodeParallel(BufferedImage)}.
+ */
 public class SSTVImageEncoder {
-    private static final int SAMPLE_RATE = 44100;
-    private static double phase = 0.0; // Track phase across all tones
+    public static final int DEFAULT_SAMPLE_RATE = 44100; // Output sample rate unless configured
 
     // Add 5ms taper window for smooth transitions
     private static final double TAPER_MS = 5.0;
 
-    // Add Scottie DX timing constants
-    private static final double SYNC_MS = 9.0;
-    private static final double PORCH_MS = 1.5;
-    private static final double SCAN_MS = 345.6;
-    private static final double LINE_MS = 508.3;
-    
+    private static final int LINE_SAMPLES = 64 * 1024; // Initial capacity of the line buffer, grows for longer lines
+    private static final int BATCHES_PER_WORKER = 4;   // Line batches per pool thread of a parallel encode, for balance
+
+    // VIS header timing
+    private static final double VIS_LEADER_MS = 300.0;
+    private static final double VIS_BREAK_MS = 10.0;
+    private static final int VIS_BIT_MS = 30;
+
+    // Start of the transmission of every mode and rate, rendered once (see Header)
+    private static final ConcurrentHashMap<Mode, ConcurrentHashMap<Integer, Header>> HEADERS = new ConcurrentHashMap<>();
+
+    private final Mode mode;
+    private final int sampleRate;                                      // Output sample rate in Hz
+    private final Oscillator oscillator;                               // Tracks phase across all tones of one transmission
+    private final double[] freqs;                                      // Reusable per-scan frequency table
+    private short[] block = new short[0];                              // Reusable samples of the segment being rendered
+    private PcmBuffer staging;                                         // Reusable direct line buffer, allocated on first use
+    private double elapsedMs = 0;                                      // Nominal time since the start of the transmission
+    private long samplesWritten = 0;                                   // Samples rendered since the start of the transmission
+
+    /**
+     * The VIS header and the tones of the preamble, which start every transmission of a mode at the same phase,
+     * as rendered once per mode and sample rate. Unlike the sync pulses and porches within the lines, whose phase
+     * carries on from the pixels before them, they are the same samples every time and are copied as a whole.
+     */
+    private static final class Header {
+        final short[] samples;      // Shared, never modified
+        final int phase;            // Oscillator phase after the header
+        final double elapsedMs;     // Nominal duration of the header
+        final int preambleSegments; // Preamble segments included
+
+        Header(short[] samples, int phase, double elapsedMs, int preambleSegments) {
+            this.samples = samples;
+            this.phase = phase;
+            this.elapsedMs = elapsedMs;
+            this.preambleSegments = preambleSegments;
+        }
+    }
+
+    /**
+     * Creates a Scottie DX encoder
+     */
+    public SSTVImageEncoder() {
+        this(Mode.SCOTTIE_DX);
+    }
+
+    /**
+     * Creates an encoder for the given mode at the default sample rate
+     * @param mode transmission mode
+     */
+    public SSTVImageEncoder(Mode mode) {
+        this(mode, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Creates an encoder for the given mode
+     * @param mode transmission mode
+     * @param sampleRate output sample rate in Hz, at least 8000
+     */
+    public SSTVImageEncoder(Mode mode, int sampleRate) {
+        if(sampleRate < 8000) throw new IllegalArgumentException("Encoding needs at least 8000 Hz, not " + sampleRate);
+        this.mode = mode;
+        this.sampleRate = sampleRate;
+        this.oscillator = new Oscillator(sampleRate);
+        this.freqs = new double[mode.getWidth()];
+    }
+
+    public Mode getMode() { return mode; }
+    public int getSampleRate() { return sampleRate; }
     
-    public static void encodeImage(String filename) throws Exception {
+    /**
+     * Encodes an image file in Scottie DX and plays it on the default audio output
+     * @param filename image to transmit
+     * @throws IOException if the image cannot be read
+     * @throws LineUnavailableException if the audio line cannot be opened
+     */
+    public static void encodeImage(String filename) throws IOException, LineUnavailableException {
+        encodeImage(filename, Mode.SCOTTIE_DX);
+    }
+
+    /**
+     * Encodes an image file and plays it on the shared audio output of {@link Sound}, returning once it has been heard
+     * @param filename image to transmit
+     * @param mode transmission mode
+     * @throws IOException if the image cannot be read
+     * @throws LineUnavailableException if the audio line cannot be opened
+     */
+    public static void encodeImage(String filename, Mode mode) throws IOException, LineUnavailableException {
         BufferedImage img = ImageIO.read(new File(filename));
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        if(img == null) throw new IOException("Unsupported image format: " + filename);
+
+        Sound.transmit(engine -> { // Kept open between transmissions
+            new SSTVImageEncoder(mode, Math.round(engine.getSampleRate())).encode(img, engine);
+            awaitPlayback(engine, filename);
+        });
+    }
+
+    /**
+     * Plays an image file on the shared audio output of {@link Sound}, rendering it only if the cache does not
+     * already hold its transmission, and returns once it has been heard
+     * @param filename image to transmit
+     * @param mode transmission mode
+     * @param cache cache of rendered transmissions
+     * @throws IOException if the image cannot be read
+     * @throws LineUnavailableException if the audio line cannot be opened
+     */
+    public static void encodeImage(String filename, Mode mode, TransmissionCache cache) throws IOException, LineUnavailableException {
+        Sound.transmit(engine -> {
+            cache.transmit(new File(filename), mode, Math.round(engine.getSampleRate()), engine);
+            awaitPlayback(engine, filename);
+        });
+    }
+
+    /**
+     * Encodes an image into a WAV file
+     * @param img image to encode
+     * @param wav destination file
+     * @throws IOException if the file cannot be written
+     */
+    public void encodeToWav(BufferedImage img, File wav) throws IOException {
+        try (WavWriter sink = new WavWriter(wav.toPath(), sampleRate)) {
+            encode(img, sink);
+        }
+    }
+
+    /**
+     * Streams the transmission of an image into a sink, one scan line at a time.
+     * Images that do not match the mode resolution are resampled to fit it (see {@link ScanFrame}).
+     * @param img image to encode
+     * @param sink destination of the PCM audio, left open
+     * @throws IOException if the sink cannot be written
+     */
+    public void encode(BufferedImage img, PcmSink sink) throws IOException {
+        encode(ScanFrame.of(img, mode), sink);
+    }
+
+    /**
+     * Streams the transmission of an already converted frame into a sink, one scan line at a time
+     * @param frame frame converted for the mode of this encoder
+     * @param sink destination of the PCM audio, left open
+     * @throws IOException if the sink cannot be written
+     */
+    public void encode(ScanFrame frame, PcmSink sink) throws IOException {
+        if(frame.getMode() != mode) throw new IllegalArgumentException("Frame is for " + frame.getMode() + ", not " + mode);
+        PcmBuffer buffer = lineBuffer();
         
         // VIS Header with phase continuity
-        renderFSK(buffer, new int[]{0,0,1,1,1,1,0,0}, 30);
-        
-        // Vertical sync
-        renderTone(buffer, 1200, 9, true);
-        renderTone(buffer, 1500, 1.5, true);
+        List<Mode.Segment> preamble = mode.getPreamble();
+        for(int i = writeHeader(buffer); i < preamble.size(); i++) {
+            renderSegment(buffer, frame, 0, preamble.get(i));
+        }
+        buffer.drainTo(sink);
 
-        for(int y = 0; y < img.getHeight(); y++) {
-            renderLine(buffer, img, y);
+        for(int line = 0; line < mode.getLineCount(); line++) {
+            renderLine(buffer, frame, line);
+            buffer.drainTo(sink);
         }
-        
-        Sound.playBuffer(buffer.toByteArray());
     }
 
-    private static void renderLine(ByteArrayOutputStream buffer, BufferedImage img, int y) {
-        // Horizontal sync
-        renderTone(buffer, 1200, SYNC_MS, true);
-        renderTone(buffer, 1500, PORCH_MS, true);
-        
-        renderColor(buffer, img, y, 2); // Red
-        renderTone(buffer, 1500, PORCH_MS, true);
+    /**
+     * Encodes an image into an in-memory PCM array
+     * @param img image to encode
+     * @return 16-bit little-endian mono PCM of the whole transmission
+     */
+    public byte[] encodeToArray(BufferedImage img) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(img, PcmSink.of(out));
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory sink failed", e); // ByteArrayOutputStream never throws
+        }
+        return out.toByteArray();
+    }
 
-        renderColor(buffer, img, y, 1); // Green
-        renderTone(buffer, 1500, PORCH_MS, true);
-        
-        renderColor(buffer, img, y, 0); // Blue
-        renderTone(buffer, 1500, PORCH_MS, true);
-        
-        // Calculate remaining silence
-        double usedMs = SYNC_MS + PORCH_MS + (SCAN_MS * 3) + (PORCH_MS * 3);
-        renderSilence(buffer, LINE_MS - usedMs);
+    /**
+     * Encodes an image into an in-memory PCM array, rendering its lines on all cores of the common fork-join pool
+     * @param img image to encode
+     * @return 16-bit little-endian mono PCM of the whole transmission, sample-identical to {@link #encodeToArray(BufferedImage)}
+     */
+    public byte[] encodeParallel(BufferedImage img) {
+        return encodeParallel(ScanFrame.of(img, mode));
     }
 
-    private static void renderColor(ByteArrayOutputStream buffer, BufferedImage img, int y, int colorOffset) {
-        double[] freqs = new double[img.getWidth()];
-        for(int x = 0; x < img.getWidth(); x++) {
-            int rgb = img.getRGB(x, y);
-            int val = (rgb >> (8 * colorOffset)) & 0xFF;
-            freqs[x] = 1500 + (val / 255.0) * 800;
+    /**
+     * Encodes an already converted frame into an in-memory PCM array, rendering its lines on all cores.
+     * <p>
+     * Each line starts at the oscillator phase the lines before it left, so the lines are cut into batches and
+     * rendered in two parallel passes. The first tracks the phase of every sample of a batch relative to the start
+     * of the batch, which is where the frequency work lies; a prefix sum of the batch totals then gives the
+     * absolute starting phase of every batch, and the second pass only looks up the sines into that batch's own
+     * region of the output. Sample counts come from replaying the exact time accumulation of the sequential
+     * encoder and the phase accumulator wraps exactly, so the result is sample-identical to
+     * {@link #encode(ScanFrame, PcmSink)}. The relative phases take 4 bytes per sample until the second pass.
+     * @param frame frame converted for the mode of this encoder
+     * @return 16-bit little-endian mono PCM of the whole transmission
+     */
+    public byte[] encodeParallel(ScanFrame frame) {
+        if(frame.getMode() != mode) throw new IllegalArgumentException("Frame is for " + frame.getMode() + ", not " + mode);
+        PcmBuffer header = lineBuffer();
+        List<Mode.Segment> preamble = mode.getPreamble();
+        for(int i = writeHeader(header); i < preamble.size(); i++) {
+            renderSegment(header, frame, 0, preamble.get(i));
+        }
+
+        // Timing of every batch, cheap enough to run in order
+        int lines = mode.getLineCount();
+        int batches = Math.max(1, Math.min(lines, ForkJoinPool.getCommonPoolParallelism() * BATCHES_PER_WORKER));
+        int[] firstLine = new int[batches + 1];
+        double[] startMs = new double[batches + 1];
+        long[] startSample = new long[batches + 1];
+        for(int batch = 0, line = 0; batch <= batches; batch++) {
+            for(int end = (int)((long)batch * lines / batches); line < end; line++) {
+                for(Mode.Segment segment : mode.getLineSegments()) {
+                    samplesFor(segment.getDurationMs());
+                }
+            }
+            firstLine[batch] = line;
+            startMs[batch] = elapsedMs;
+            startSample[batch] = samplesWritten;
         }
-        renderSweep(buffer, freqs, SCAN_MS);
+
+        // Pass 1: phase of every sample relative to its batch, then the starting phase of each batch
+        int[][] phases = new int[batches][];
+        int[] startPhase = new int[batches + 1];
+        IntStream.range(0, batches).parallel().forEach(batch -> {
+            SSTVImageEncoder worker = new SSTVImageEncoder(mode, sampleRate);
+            worker.elapsedMs = startMs[batch];
+            worker.samplesWritten = startSample[batch];
+            int[] relative = new int[(int)(startSample[batch + 1] - startSample[batch])];
+            for(int line = firstLine[batch], at = 0; line < firstLine[batch + 1]; line++) {
+                at = worker.trackLine(frame, line, relative, at);
+            }
+            phases[batch] = relative;
+            startPhase[batch + 1] = worker.oscillator.getPhase(); // Advance over the batch
+        });
+        startPhase[0] = oscillator.getPhase();
+        for(int batch = 1; batch < batches; batch++) {
+            startPhase[batch] += startPhase[batch - 1]; // Wraps like the accumulator itself
+        }
+
+        // Pass 2: every batch looks up its sines into its own region of the output
+        ByteBuffer out = ByteBuffer.allocate(Math.toIntExact(2 * startSample[batches])).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            header.drainTo((pcm, offset, length) -> out.put(pcm, offset, length));
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory sink failed", e); // A heap buffer never throws
+        }
+        IntStream.range(0, batches).parallel().forEach(batch -> {
+            int[] relative = phases[batch];
+            int start = startPhase[batch];
+            ShortBuffer region = out.slice((int)(2 * startSample[batch]), 2 * relative.length)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            short[] block = new short[Math.min(relative.length, LINE_SAMPLES)];
+            for(int done = 0; done < relative.length; done += block.length) {
+                int n = Math.min(block.length, relative.length - done);
+                for(int i = 0; i < n; i++) {
+                    block[i] = (short)(Oscillator.sine(start + relative[done + i]) * Short.MAX_VALUE);
+                }
+                region.put(block, 0, n);
+            }
+            phases[batch] = null;
+        });
+        return out.array();
+    }
+
+    /**
+     * Encodes a batch of images in parallel on the common fork-join pool
+     * @param images images to encode
+     * @param mode transmission mode
+     * @return PCM of each transmission, in the same order as the images
+     * @throws InterruptedException if interrupted while waiting for the batch
+     */
+    public static List<byte[]> encodeAll(List<? extends BufferedImage> images, Mode mode) throws InterruptedException {
+        return encodeAll(images, mode, ForkJoinPool.commonPool());
     }
 
-    private static void renderTone(ByteArrayOutputStream buffer, double freq, double durationMs, boolean taper) {
-        int samples = (int)(durationMs * SAMPLE_RATE / 1000);
-        int taperSamples = (int)(TAPER_MS * SAMPLE_RATE / 1000);
+    /**
+     * Encodes a batch of images in parallel, one encoder instance per image.
+     * The result is bit-identical to encoding the images one after the other.
+     * @param images images to encode
+     * @param mode transmission mode
+     * @param executor executor running the encodes
+     * @return PCM of each transmission, in the same order as the images
+     * @throws InterruptedException if interrupted while waiting for the batch
+     */
+    public static List<byte[]> encodeAll(List<? extends BufferedImage> images, Mode mode, ExecutorService executor)
+            throws InterruptedException {
+        List<Callable<byte[]>> tasks = new ArrayList<>(images.size());
+        for(BufferedImage img : images) {
+            tasks.add(() -> new SSTVImageEncoder(mode).encodeToArray(img));
+        }
+
+        List<byte[]> results = new ArrayList<>(images.size());
+        for(Future<byte[]> future : executor.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Encoding failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    // Wait until a transmission queued on the engine has been played
+    private static void awaitPlayback(PlaybackEngine engine, String filename) throws InterruptedIOException {
+        try {
+            engine.drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while playing " + filename);
+        }
+    }
+
+    // Writes the cached start of a transmission and picks up its time and phase, returns the preamble segments it held
+    private int writeHeader(PcmBuffer buffer) {
+        Header header = HEADERS.computeIfAbsent(mode, m -> new ConcurrentHashMap<>())
+            .computeIfAbsent(sampleRate, rate -> new SSTVImageEncoder(mode, rate).renderHeader());
+        buffer.write(header.samples, 0, header.samples.length);
+        oscillator.setPhase(header.phase);
+        elapsedMs = header.elapsedMs;
+        samplesWritten = header.samples.length;
+        return header.preambleSegments;
+    }
+
+    // The reusable line buffer of this encoder, emptied
+    private PcmBuffer lineBuffer() {
+        if(staging == null) staging = new PcmBuffer(LINE_SAMPLES);
+        staging.clear();
+        return staging;
+    }
+
+    // Renders the VIS header and the tones leading the preamble from the start of a transmission
+    private Header renderHeader() {
+        PcmBuffer buffer = lineBuffer();
+        oscillator.reset(); // Every transmission starts from the same phase, so output is reproducible
+        elapsedMs = 0;
+        samplesWritten = 0;
+        renderVis(buffer);
+        int segments = 0;
+        for(Mode.Segment segment : mode.getPreamble()) {
+            if(segment.getKind() == Mode.Segment.Kind.SCAN) break; // Depends on the image
+            renderTone(buffer, segment.getFrequency(), segment.getDurationMs(), false);
+            segments++;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            buffer.drainTo(PcmSink.of(out));
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory sink failed", e); // ByteArrayOutputStream never throws
+        }
+        short[] samples = new short[(int)samplesWritten];
+        ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        return new Header(samples, oscillator.getPhase(), elapsedMs, segments);
+    }
+
+    // VIS header: leader, break, leader, start bit, 7 data bits (LSB first), even parity, stop bit
+    private void renderVis(PcmBuffer buffer) {
+        int code = mode.getVisCode();
+        int[] bits = new int[8];
+        for(int bit = 0; bit < 7; bit++) {
+            bits[bit] = (code >> bit) & 1;
+        }
+        bits[7] = Integer.bitCount(code) & 1; // Even parity
+
+        renderTone(buffer, Mode.LEADER_FREQ, VIS_LEADER_MS, true);
+        renderTone(buffer, Mode.SYNC_FREQ, VIS_BREAK_MS, false);
+        renderTone(buffer, Mode.LEADER_FREQ, VIS_LEADER_MS, false);
+        renderTone(buffer, Mode.SYNC_FREQ, VIS_BIT_MS, false); // Start bit
+        renderFSK(buffer, bits, VIS_BIT_MS);
+        renderTone(buffer, Mode.SYNC_FREQ, VIS_BIT_MS, false); // Stop bit
+    }
+
+    private void renderLine(PcmBuffer buffer, ScanFrame frame, int line) {
+        for(Mode.Segment segment : mode.getLineSegments()) {
+            renderSegment(buffer, frame, line, segment);
+        }
+    }
+
+    private void renderSegment(PcmBuffer buffer, ScanFrame frame, int line, Mode.Segment segment) {
+        if(segment.getKind() == Mode.Segment.Kind.SCAN) {
+            frame.scanFrequencies(line, segment, freqs);
+            renderSweep(buffer, freqs, segment.getDurationMs());
+        } else {
+            renderTone(buffer, segment.getFrequency(), segment.getDurationMs(), false);
+        }
+    }
+
+    // Advances the time and phase over a line exactly as renderLine does, storing the phase of every sample
+    // instead of rendering it, and returns the index after the line
+    private int trackLine(ScanFrame frame, int line, int[] phases, int at) {
+        int phase = oscillator.getPhase();
+        for(Mode.Segment segment : mode.getLineSegments()) {
+            int samples = samplesFor(segment.getDurationMs());
+            if(segment.getKind() == Mode.Segment.Kind.SCAN) {
+                frame.scanFrequencies(line, segment, freqs);
+                phase = trackSweep(freqs, samples, phases, at, phase);
+            } else {
+                int increment = oscillator.increment(segment.getFrequency());
+                for(int i = 0; i < samples; i++) {
+                    phases[at + i] = phase;
+                    phase += increment;
+                }
+            }
+            at += samples;
+        }
+        oscillator.setPhase(phase);
+        return at;
+    }
+
+    // Phases of the samples of a sweep from a starting phase, returns the phase after it
+    private int trackSweep(double[] freqs, int totalSamples, int[] phases, int at, int phase) {
+        double pixelsPerSample = (double)freqs.length / totalSamples;
+        for(int i = 0; i < totalSamples; i++) {
+            phases[at + i] = phase;
+            phase += oscillator.increment(sweepFrequency(freqs, i * pixelsPerSample));
+        }
+        return phase;
+    }
+
+    // Sample count of the next segment, accumulating the exact time so rounding never drifts
+    private int samplesFor(double durationMs) {
+        elapsedMs += durationMs;
+        long end = Math.round(elapsedMs * sampleRate / 1000);
+        int samples = (int)(end - samplesWritten);
+        samplesWritten = end;
+        return samples;
+    }
+
+    void renderTone(PcmBuffer buffer, double freq, double durationMs, boolean taper) {
+        int samples = samplesFor(durationMs);
+        int taperSamples = (int)(TAPER_MS * sampleRate / 1000);
+        double[] ramp = Taper.ramp(taperSamples);
+        int increment = oscillator.increment(freq);
+        short[] block = block(samples);
         
         for(int i = 0; i < samples; i++) {
             double amplitude = 1.0;
             if(taper) {
                 // Apply cosine taper to first/last 5ms
-                amplitude = i < taperSamples ? 
-                    (0.5 - 0.5 * Math.cos(Math.PI * i / taperSamples)) :
-                    (i > samples - taperSamples ? 
-                     (0.5 - 0.5 * Math.cos(Math.PI * (samples - i) / taperSamples)) :
-                     1.0);
+                amplitude = i < taperSamples ? ramp[i] :
+                    (i > samples - taperSamples ? ramp[samples - i] : 1.0);
             }
             
-            short sample = (short)(Math.sin(phase) * Short.MAX_VALUE * amplitude);
-            phase += 2 * Math.PI * freq / SAMPLE_RATE;
-            
-            buffer.write((byte)(sample & 0xFF));
-            buffer.write((byte)(sample >> 8));
+            block[i] = (short)(oscillator.next(increment) * Short.MAX_VALUE * amplitude);
         }
+        buffer.write(block, 0, samples);
     }
 
-    private static void renderSweep(ByteArrayOutputStream buffer, double[] freqs, double durationMs) {
-        int totalSamples = (int)(durationMs * SAMPLE_RATE / 1000);
-        double samplesPerPixel = (double)totalSamples / freqs.length;
-        int taperSamples = (int)(TAPER_MS * SAMPLE_RATE / 1000);
+    void renderSweep(PcmBuffer buffer, double[] freqs, double durationMs) {
+        int totalSamples = samplesFor(durationMs);
+        double pixelsPerSample = (double)freqs.length / totalSamples; // Multiplied, not divided, per sample
+        short[] block = block(totalSamples);
 
         for(int i = 0; i < totalSamples; i++) {
-            int px = (int)(i / samplesPerPixel);
-            double freq = freqs[Math.min(px, freqs.length - 1)];
-            
-            // Smooth frequency transitions
-            double alpha = (i % samplesPerPixel) / samplesPerPixel;
-            if(px < freqs.length - 1) {
-                freq = freqs[px] * (1 - alpha) + freqs[px + 1] * alpha;
-            }
-
-            // Apply window to entire sweep
-            double amplitude = 1.0;
-            if(i < taperSamples) {
-                amplitude = 0.5 - 0.5 * Math.cos(Math.PI * i / taperSamples);
-            } else if(i > totalSamples - taperSamples) {
-                amplitude = 0.5 - 0.5 * Math.cos(Math.PI * (totalSamples - i) / taperSamples);
-            }
-
-            short sample = (short)(Math.sin(phase) * Short.MAX_VALUE * amplitude);
-            phase += 2 * Math.PI * freq / SAMPLE_RATE;
-            
-            buffer.write((byte)(sample & 0xFF));
-            buffer.write((byte)(sample >> 8));
+            block[i] = (short)(oscillator.next(sweepFrequency(freqs, i * pixelsPerSample)) * Short.MAX_VALUE);
         }
+        buffer.write(block, 0, totalSamples);
     }
 
-    private static void renderFSK(ByteArrayOutputStream buffer, int[] bits, int bitDurationMs) {
-        int samplesPerBit = (int)(bitDurationMs * SAMPLE_RATE / 1000);
-        int taperSamples = (int)(TAPER_MS * SAMPLE_RATE / 1000);
+    // Frequency at a fractional pixel position, interpolated for smooth transitions
+    private static double sweepFrequency(double[] freqs, double position) {
+        int last = freqs.length - 1;
+        int px = Math.min((int)position, last);
+        double freq = freqs[px];
+        if(px < last) {
+            freq += (freqs[px + 1] - freq) * (position - px);
+        }
+        return freq;
+    }
 
+    // Continuous-phase FSK: 1100 Hz for a one, 1300 Hz for a zero
+    private void renderFSK(PcmBuffer buffer, int[] bits, int bitDurationMs) {
         for(int bit : bits) {
-            double freq = bit == 0 ? 1100 : 1300;
-            for(int i = 0; i < samplesPerBit; i++) {
-                double amplitude = 1.0;
-                if(i < taperSamples || i > samplesPerBit - taperSamples) {
-                    amplitude = 0.5 - 0.5 * Math.cos(Math.PI * 
-                        Math.min(i, samplesPerBit - i) / taperSamples);
-                }
-                
-                short sample = (short)(Math.sin(phase) * Short.MAX_VALUE * amplitude);
-                phase += 2 * Math.PI * freq / SAMPLE_RATE;
-                
-                buffer.write((byte)(sample & 0xFF));
-                buffer.write((byte)(sample >> 8));
-            }
+            renderTone(buffer, bit == 1 ? 1100 : 1300, bitDurationMs, false);
         }
     }
 
-    private static void renderSilence(ByteArrayOutputStream buffer, double durationMs) {
-        int samples = (int)(durationMs * SAMPLE_RATE / 1000);
-        for(int i = 0; i < samples; i++) {
-            buffer.write(0);
-            buffer.write(0);
-            phase += 0; // Maintain phase even during silence
-        }
+    // Reusable sample array holding at least the given number of samples
+    private short[] block(int samples) {
+        if(block.length < samples) block = new short[samples];
+        return block;
     }
-}
\ No newline at end of file
+}
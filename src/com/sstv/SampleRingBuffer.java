@@ -0,0 +1,152 @@
+package src.com.sstv;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Growable ring buffer of 16-bit PCM samples.
+ * Samples are stored as primitive shorts, so appending and consuming audio never boxes.
+ * The buffer only grows when it is full, so once it has reached its working size
+ * the steady-state decode loop allocates nothing per sample.
+ * <p>
+ * Windows are handed to the analysis stages in single precision, normalized to [-1, 1). A 16-bit sample
+ * scaled by 2^-15 is exact in a float (24-bit significand), so the conversion loses nothing, and a float
+ * window is half the size of a double one. Products of samples carry a relative rounding error of at most
+ * 2^-24 (6e-8), far below the 3e-5 quantization step of the input; sums over many samples, whose
+ * differences are taken later (energy, correlations, prefix sums), are accumulated in double by the callers.
+ */
+public class SampleRingBuffer {
+    private static final float SCALE = 1.0f / 32768.0f; // Normalizes a 16-bit sample to [-1, 1)
+
+    private short[] data;   // Backing storage, length is always a power of two
+    private int mask;       // data.length - 1, used to wrap indices
+    private int head = 0;   // Index of the oldest sample
+    private int size = 0;   // Number of samples currently stored
+
+    /**
+     * Creates a ring buffer able to hold at least the given number of samples before growing
+     * @param initialCapacity initial capacity in samples
+     */
+    public SampleRingBuffer(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1)) << 1;
+        data = new short[capacity];
+        mask = capacity - 1;
+    }
+
+    public int size() { return size; }
+    public int capacity() { return data.length; }
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * Appends 16-bit little-endian PCM bytes to the buffer
+     * @param pcm source bytes
+     * @param offset first byte to read
+     * @param length number of bytes to read (an odd trailing byte is ignored)
+     */
+    public void write(byte[] pcm, int offset, int length) {
+        int count = length >> 1;
+        ensureCapacity(size + count);
+        int tail = (head + size) & mask;
+        for(int i = 0; i < count; i++) {
+            int b = offset + 2 * i;
+            data[(tail + i) & mask] = (short)((pcm[b] & 0xFF) | (pcm[b + 1] << 8));
+        }
+        size += count;
+    }
+
+    /**
+     * Appends samples to the buffer
+     * @param samples source samples
+     * @param offset first sample to read
+     * @param count number of samples to read
+     */
+    public void write(short[] samples, int offset, int count) {
+        ensureCapacity(size + count);
+        int tail = (head + size) & mask;
+        int first = Math.min(count, data.length - tail);
+        System.arraycopy(samples, offset, data, tail, first);
+        System.arraycopy(samples, offset + first, data, 0, count - first);
+        size += count;
+    }
+
+    /**
+     * Appends samples from a buffer, such as a view of a mapped file, in up to two bulk copies
+     * @param samples samples from the buffer position to its limit, the position is left unchanged
+     */
+    public void write(ShortBuffer samples) {
+        int count = samples.remaining();
+        ensureCapacity(size + count);
+        int tail = (head + size) & mask;
+        int first = Math.min(count, data.length - tail);
+        int from = samples.position();
+        samples.get(from, data, tail, first);
+        samples.get(from + first, data, 0, count - first);
+        size += count;
+    }
+
+    /**
+     * Gets a sample without consuming it
+     * @param index position relative to the oldest sample
+     * @return raw 16-bit sample
+     */
+    public short get(int index) {
+        if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Sample " + index + " of " + size);
+        return data[(head + index) & mask];
+    }
+
+    /**
+     * Copies normalized samples into a caller-owned window without consuming them
+     * @param index position relative to the oldest sample
+     * @param dst destination window
+     * @param count number of samples to copy
+     */
+    public void peek(int index, float[] dst, int count) {
+        if(index < 0 || count > size - index) throw new IndexOutOfBoundsException("Window " + index + "+" + count + " of " + size);
+        // Up to two contiguous runs instead of wrapping every index, so the loops can be vectorized
+        int start = (head + index) & mask;
+        int run = Math.min(count, data.length - start);
+        for(int i = 0; i < run; i++) {
+            dst[i] = data[start + i] * SCALE;
+        }
+        for(int i = run; i < count; i++) {
+            dst[i] = data[i - run] * SCALE;
+        }
+    }
+
+    /**
+     * Copies normalized samples into a caller-owned window and consumes them
+     * @param dst destination window
+     * @param count number of samples to read
+     */
+    public void read(float[] dst, int count) {
+        peek(0, dst, count);
+        skip(count);
+    }
+
+    /**
+     * Discards samples from the head of the buffer
+     * @param count number of samples to drop (clamped to the current size)
+     */
+    public void skip(int count) {
+        int n = Math.min(Math.max(count, 0), size);
+        head = (head + n) & mask;
+        size -= n;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    // Grow to the next power of two, unwrapping the stored samples to the start of the new array
+    private void ensureCapacity(int required) {
+        if(required <= data.length) return;
+        int capacity = Integer.highestOneBit(required - 1) << 1;
+        short[] grown = new short[capacity];
+        int first = Math.min(size, data.length - head);
+        System.arraycopy(data, head, grown, 0, first);
+        System.arraycopy(data, 0, grown, first, size - first);
+        data = grown;
+        mask = capacity - 1;
+        head = 0;
+    }
+}
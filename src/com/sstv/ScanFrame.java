@@ -0,0 +1,164 @@
+package src.com.sstv;
+
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+/**
+ * An image converted once into what a {@link Mode} transmits: resampled to the mode resolution and split
+ * into one 8-bit plane per scanned channel (R, G, B or Y, Cb, Cr).
+ * <p>
+ * Source rows are read in bulk, straight from the raster for the common pixel layouts, and each output pixel
+ * is the average of the source area it covers, so large photos are downscaled properly in a single pass.
+ * Rows are converted in parallel. Encoding then only looks up scan frequencies in the planes.
+ */
+public final class ScanFrame {
+    private static final double[] FREQUENCIES = new double[256]; // Scan frequency of every channel value
+
+    static {
+        for(int value = 0; value < 256; value++) {
+            FREQUENCIES[value] = SSTVEncoder.rgbToFrequency(value);
+        }
+    }
+
+    private final Mode mode;
+    private final int width;
+    private final byte[][] planes; // [channel ordinal][y * width + x], null for channels the mode does not scan
+
+    private ScanFrame(Mode mode, byte[][] planes) {
+        this.mode = mode;
+        this.width = mode.getWidth();
+        this.planes = planes;
+    }
+
+    /**
+     * Converts an image for a mode
+     * @param img source image, any size and pixel layout
+     * @param mode mode the frame will be transmitted in
+     * @return converted frame
+     */
+    public static ScanFrame of(BufferedImage img, Mode mode) {
+        int width = mode.getWidth(), height = mode.getHeight();
+        int srcWidth = img.getWidth(), srcHeight = img.getHeight();
+        byte[][] planes = new byte[Mode.Channel.values().length][];
+        for(Mode.Channel channel : mode.getChannelOrder()) {
+            planes[channel.ordinal()] = new byte[width * height];
+        }
+
+        // Source column span of every output column (a single column when upscaling)
+        int[] columns = new int[width + 1];
+        for(int x = 0; x <= width; x++) {
+            columns[x] = (int)((long)x * srcWidth / width);
+        }
+
+        IntStream.range(0, height).parallel().forEach(y -> {
+            int firstRow = (int)((long)y * srcHeight / height);
+            int lastRow = Math.max(firstRow + 1, (int)((long)(y + 1) * srcHeight / height));
+            int[] row = new int[srcWidth];
+            byte[] bytes = img.getType() == BufferedImage.TYPE_3BYTE_BGR ? new byte[srcWidth * 3] : null;
+            long[] sums = new long[width * 3];
+            for(int sy = firstRow; sy < lastRow; sy++) {
+                readRow(img, sy, row, bytes);
+                for(int x = 0; x < width; x++) {
+                    int end = Math.max(columns[x] + 1, columns[x + 1]);
+                    long r = 0, g = 0, b = 0;
+                    for(int sx = columns[x]; sx < end; sx++) {
+                        int rgb = row[sx];
+                        r += (rgb >> 16) & 0xFF;
+                        g += (rgb >> 8) & 0xFF;
+                        b += rgb & 0xFF;
+                    }
+                    sums[3 * x] += r;
+                    sums[3 * x + 1] += g;
+                    sums[3 * x + 2] += b;
+                }
+            }
+
+            for(int x = 0; x < width; x++) {
+                double area = (double)(lastRow - firstRow) * (Math.max(columns[x] + 1, columns[x + 1]) - columns[x]);
+                double r = sums[3 * x] / area, g = sums[3 * x + 1] / area, b = sums[3 * x + 2] / area;
+                int at = y * width + x;
+                for(Mode.Channel channel : mode.getChannelOrder()) {
+                    planes[channel.ordinal()][at] = (byte)toByte(channelValue(channel, r, g, b));
+                }
+            }
+        });
+        return new ScanFrame(mode, planes);
+    }
+
+    public Mode getMode() { return mode; }
+
+    /**
+     * Gets one channel value of a pixel
+     * @param channel scanned channel
+     * @param x column
+     * @param y row
+     * @return value 0-255
+     */
+    public int getValue(Mode.Channel channel, int x, int y) {
+        return planes[channel.ordinal()][y * width + x] & 0xFF;
+    }
+
+    /**
+     * Fills the frequency table of one scan of a transmitted line.
+     * Scans shared by all rows of the line (subsampled chroma) carry the average of those rows.
+     * @param line transmitted line
+     * @param segment scan segment of the mode
+     * @param freqs destination, one frequency per pixel of the mode width
+     */
+    public void scanFrequencies(int line, Mode.Segment segment, double[] freqs) {
+        byte[] plane = planes[segment.getChannel().ordinal()];
+        int firstRow = line * mode.getRowsPerLine();
+        if(segment.getRow() != Mode.Segment.ALL_ROWS) {
+            int base = (firstRow + segment.getRow()) * width;
+            for(int x = 0; x < width; x++) {
+                freqs[x] = FREQUENCIES[plane[base + x] & 0xFF];
+            }
+            return;
+        }
+
+        int rows = mode.getRowsPerLine();
+        for(int x = 0; x < width; x++) {
+            int sum = 0;
+            for(int row = 0; row < rows; row++) {
+                sum += plane[(firstRow + row) * width + x] & 0xFF;
+            }
+            freqs[x] = FREQUENCIES[(int)Math.round((double)sum / rows)];
+        }
+    }
+
+    // Value of one channel of an (averaged) pixel
+    private static double channelValue(Mode.Channel channel, double r, double g, double b) {
+        switch(channel) {
+            case RED:   return r;
+            case GREEN: return g;
+            case BLUE:  return b;
+            case Y:     return Color.luma(r, g, b);
+            case CB:    return Color.blueChroma(r, g, b);
+            default:    return Color.redChroma(r, g, b);
+        }
+    }
+
+    private static int toByte(double value) {
+        return (int)Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    // Read one source row as packed RGB, straight from the raster for the common pixel layouts
+    static void readRow(BufferedImage img, int y, int[] row, byte[] bytes) {
+        int width = img.getWidth();
+        switch(img.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: // Alpha is ignored, as with getRGB
+                img.getRaster().getDataElements(0, y, width, 1, row);
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR: { // What ImageIO returns for most JPEG photos
+                img.getRaster().getDataElements(0, y, width, 1, bytes);
+                for(int x = 0; x < width; x++) {
+                    row[x] = ((bytes[3 * x] & 0xFF) << 16) | ((bytes[3 * x + 1] & 0xFF) << 8) | (bytes[3 * x + 2] & 0xFF);
+                }
+                break;
+            }
+            default:
+                img.getRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+}
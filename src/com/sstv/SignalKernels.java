@@ -0,0 +1,191 @@
+package src.com.sstv;
+
+import java.util.Random;
+
+/**
+ * Inner loops of the signal chain, as plain Java with a SIMD variant picked once at startup.
+ * <p>
+ * This class is the scalar implementation. When the JVM runs with {@code --add-modules jdk.incubator.vector},
+ * {@link #get()} returns a {@code VectorKernels} built on the JDK Vector API instead, which processes a whole
+ * hardware vector of samples per instruction (16 floats with AVX-512). The vector kernels are checked against
+ * the scalar ones on random data before they are used; if the module is missing, the check fails or the
+ * system property {@code sstv.kernels=scalar} is set, the scalar kernels are used.
+ * <p>
+ * All kernels work on {@code float} samples normalized to [-1, 1], which is ample for 16-bit audio.
+ */
+public class SignalKernels {
+    private static final int QUARTER_TURN = 1 << 30; // 90 degrees in oscillator phase units
+    private static final float TOLERANCE = 1e-4f;    // Relative difference allowed between implementations
+
+    private static final SignalKernels SCALAR = new SignalKernels();
+    private static final SignalKernels SELECTED = select();
+
+    SignalKernels() {}
+
+    /**
+     * Gets the kernels selected for this JVM
+     * @return vector kernels if available and verified, scalar kernels otherwise
+     */
+    public static SignalKernels get() { return SELECTED; }
+
+    /**
+     * Gets the scalar kernels, the reference every other implementation is checked against
+     * @return scalar kernels
+     */
+    public static SignalKernels scalar() { return SCALAR; }
+
+    /**
+     * Tells whether these kernels use SIMD instructions. Callers may keep a fused scalar loop for the scalar case.
+     * @return true for the Vector API kernels
+     */
+    public boolean isVectorized() { return false; }
+
+    /**
+     * Gets the number of samples processed per instruction
+     * @return vector length in floats, 1 for the scalar kernels
+     */
+    public int getLanes() { return 1; }
+
+    /**
+     * Gets the size of the work space {@link #mix} needs, to be allocated once by each caller
+     * @return floats of scratch space
+     */
+    public int getScratchLength() { return 0; }
+
+    /**
+     * Dot product, the inner loop of an FIR filter
+     * @param a first operand
+     * @param aOffset first element of a
+     * @param b second operand
+     * @param bOffset first element of b
+     * @param count number of products
+     * @return sum of a[aOffset + k] * b[bOffset + k]
+     */
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int count) {
+        float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0; // Independent partial sums
+        int k = 0;
+        for(; k + 3 < count; k += 4) {
+            sum0 += a[aOffset + k] * b[bOffset + k];
+            sum1 += a[aOffset + k + 1] * b[bOffset + k + 1];
+            sum2 += a[aOffset + k + 2] * b[bOffset + k + 2];
+            sum3 += a[aOffset + k + 3] * b[bOffset + k + 3];
+        }
+        for(; k < count; k++) {
+            sum0 += a[aOffset + k] * b[bOffset + k];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * Block FIR filter in correlation form: output[outOffset + n] = sum of taps[k] * input[offset + n + k]
+     * @param input samples, taps.length - 1 samples longer than the output
+     * @param offset first input sample
+     * @param taps filter coefficients (reversed impulse response)
+     * @param output destination
+     * @param outOffset first output sample
+     * @param count number of output samples
+     */
+    public void fir(float[] input, int offset, float[] taps, float[] output, int outOffset, int count) {
+        for(int n = 0; n < count; n++) {
+            output[outOffset + n] = dot(taps, 0, input, offset + n, taps.length);
+        }
+    }
+
+    /**
+     * Mixes samples down with a complex local oscillator: i = x cos(phase), q = -x sin(phase)
+     * @param input samples
+     * @param count number of samples
+     * @param phase oscillator phase of the first sample, 2^32 is one turn
+     * @param increment phase step per sample
+     * @param i destination of the in-phase products
+     * @param q destination of the quadrature products
+     * @param outOffset first output sample
+     * @param scratch caller-owned work space of {@link #getScratchLength()} floats, so mixing allocates nothing
+     */
+    public void mix(float[] input, int count, int phase, int increment, float[] i, float[] q, int outOffset, float[] scratch) {
+        for(int n = 0; n < count; n++) {
+            float x = input[n];
+            i[outOffset + n] = x * Oscillator.sine(phase + QUARTER_TURN);
+            q[outOffset + n] = -x * Oscillator.sine(phase);
+            phase += increment;
+        }
+    }
+
+    /**
+     * Lag-1 autocorrelation of a complex signal, whose angle is the phase step between consecutive samples
+     * @param i in-phase samples, count + 1 of them
+     * @param q quadrature samples, count + 1 of them
+     * @param count number of products
+     * @param cross destination of i[n] q[n + 1] - q[n] i[n + 1]
+     * @param dot destination of i[n] i[n + 1] + q[n] q[n + 1]
+     */
+    public void lagProducts(float[] i, float[] q, int count, float[] cross, float[] dot) {
+        for(int n = 0; n < count; n++) {
+            cross[n] = i[n] * q[n + 1] - q[n] * i[n + 1];
+            dot[n] = i[n] * i[n + 1] + q[n] * q[n + 1];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+
+    private static SignalKernels select() {
+        if("scalar".equals(System.getProperty("sstv.kernels"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            SignalKernels vector = (SignalKernels)Class.forName("src.com.sstv.VectorKernels")
+                .getDeclaredConstructor().newInstance();
+            return agrees(vector, SCALAR) ? vector : SCALAR;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR; // Module present but not usable on this platform
+        }
+    }
+
+    // Run every kernel of both implementations on the same random data, odd lengths to cover the loop tails
+    static boolean agrees(SignalKernels candidate, SignalKernels reference) {
+        Random random = new Random(1);
+        int count = 301;
+        float[] a = new float[count + 64], b = new float[count + 64];
+        for(int k = 0; k < a.length; k++) {
+            a[k] = random.nextFloat() * 2 - 1;
+            b[k] = random.nextFloat() * 2 - 1;
+        }
+
+        for(int taps : new int[] { 5, 23, 48, 113 }) {
+            if(!close(candidate.dot(a, 3, b, 7, taps), reference.dot(a, 3, b, 7, taps), taps)) return false;
+        }
+
+        float[] taps = new float[23];
+        for(int k = 0; k < taps.length; k++) taps[k] = Math.min(k + 1, taps.length - k);
+        float[] expected = new float[count], actual = new float[count];
+        reference.fir(a, 1, taps, expected, 0, count);
+        candidate.fir(a, 1, taps, actual, 0, count);
+        if(!close(actual, expected, 144)) return false;
+
+        float[] i1 = new float[count + 1], q1 = new float[count + 1], i2 = new float[count + 1], q2 = new float[count + 1];
+        reference.mix(a, count, 123456789, 185000000, i1, q1, 1, new float[reference.getScratchLength()]);
+        candidate.mix(a, count, 123456789, 185000000, i2, q2, 1, new float[candidate.getScratchLength()]);
+        if(!close(i2, i1, 1) || !close(q2, q1, 1)) return false;
+
+        float[] cross1 = new float[count], dot1 = new float[count], cross2 = new float[count], dot2 = new float[count];
+        reference.lagProducts(a, b, count, cross1, dot1);
+        candidate.lagProducts(a, b, count, cross2, dot2);
+        return close(cross2, cross1, 2) && close(dot2, dot1, 2);
+    }
+
+    private static boolean close(float[] actual, float[] expected, float scale) {
+        for(int k = 0; k < expected.length; k++) {
+            if(!close(actual[k], expected[k], scale)) return false;
+        }
+        return true;
+    }
+
+    // Equal within the tolerance, relative to the scale of the values involved
+    private static boolean close(float actual, float expected, float scale) {
+        return Math.abs(actual - expected) <= TOLERANCE * scale;
+    }
+}
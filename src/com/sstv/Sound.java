@@ -1,12 +1,29 @@
 package src.com.sstv;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.sound.sampled.*;
 
+/**
+ * Tones, sweeps and scan lines queued on one shared {@link PlaybackEngine}.
+ * <p>
+ * The play methods return as soon as their samples are queued, and the engine plays them on a daemon thread.
+ * A program that returns from {@code main} right after playing exits with the rest of the queue unheard:
+ * call {@link #drain()} first.
+ */
 public class Sound {
-    private static final int SAMPLE_RATE = 44100;   // Sample rate in Hz (low-quality for reduced processing load)
-    private static SourceDataLine line;             // 
+    private static int sampleRate = SSTVImageEncoder.DEFAULT_SAMPLE_RATE; // Sample rate of the playback engine in Hz
+    private static PlaybackEngine engine;           // Shared audio output, opened on first use
+    private static final Object PLAYBACK = new Object(); // Guards the queueing state below
+    private static final ReadWriteLock RATE = new ReentrantReadWriteLock(); // Shared by transmissions, exclusive for a rate change
+    private static Oscillator playback = new Oscillator(sampleRate); // Phase carried across queued sounds
+    private static long queuedMs = 0;               // Time queued since the engine was opened
+    private static long queuedSamples = 0;          // Samples queued since the engine was opened
+    private static final int BLOCK_SAMPLES = 4096;  // Samples rendered at a time into a PcmBuffer
+    private static final PcmBuffer STAGING = new PcmBuffer(BLOCK_SAMPLES); // Reused by renderToBuffer, guards itself
     private double frequency;                       // Frequency of the tone in Hz
     private double startFreq;                       // Frequency of the start tone in Hz (FSK)
     private double endFreq;                         // Frequency of the end tone in Hz   (FSK)
@@ -39,49 +56,102 @@ public class Sound {
     public double getFrequency() { return frequency; }
     public int getDuration() { return duration; }
 
+    /**
+     * Sets the sample rate of everything played through Sound. Waits for the image transmissions in progress
+     * (see {@link SSTVImageEncoder#encodeImage(String, Mode)}) to finish; the next sound opens a new engine at the
+     * new rate, while the old one plays what it has queued and is closed before this returns.
+     * Must not be called from inside a transmission.
+     * @param rate sample rate in Hz, at least 8000
+     */
+    public static void setSampleRate(int rate) {
+        if (rate < 8000) throw new IllegalArgumentException("Playback needs at least 8000 Hz, not " + rate);
+        PlaybackEngine old;
+        RATE.writeLock().lock();
+        try {
+            synchronized (PLAYBACK) {
+                synchronized (Sound.class) {
+                    if (rate == sampleRate) return;
+                    old = engine;
+                    engine = null;
+                    sampleRate = rate;
+                }
+                playback = new Oscillator(rate);
+                queuedMs = 0;
+                queuedSamples = 0;
+            }
+        } finally {
+            RATE.writeLock().unlock();
+        }
+        if (old != null) old.close(); // Can take as long as the queue, so without holding any lock
+    }
+
+    /**
+     * Gets the sample rate of the shared playback engine
+     * @return sample rate in Hz
+     */
+    public static synchronized int getSampleRate() { return sampleRate; }
+
+    /**
+     * Renders a sine wave tone at the playback sample rate into a byte stream.
+     * @param buffer destination of the 16-bit little-endian samples
+     * @param freq The frequency of the tone in Hz.
+     * @param durationMs The duration of the tone in milliseconds.
+     */
     public static void renderToBuffer(ByteArrayOutputStream buffer, double freq, int durationMs) {
-        int samples = (int)(durationMs / 1000.0 * SAMPLE_RATE);
-        for (int i = 0; i < samples; i++) {
-            double angle = 2.0 * Math.PI * freq * i / SAMPLE_RATE;
-            short sample = (short)(Math.sin(angle) * Short.MAX_VALUE);
-            buffer.write((byte)(sample & 0xFF));
-            buffer.write((byte)((sample >> 8) & 0xFF));
+        synchronized (STAGING) { // One staging buffer for every call, grown to the longest tone
+            renderToBuffer(STAGING, freq, durationMs);
+            try {
+                STAGING.drainTo(PcmSink.of(buffer));
+            } catch (IOException e) {
+                throw new IllegalStateException("In-memory sink failed", e); // ByteArrayOutputStream never throws
+            }
         }
     }
 
     /**
-     * Generates and plays a sine wave tone with the specified frequency and duration.
-     * Uses 16-bit PCM encoding and plays the sound via Java's audio system.
+     * Renders a sine wave tone at the playback sample rate into a PCM buffer.
+     * @param buffer destination of the samples
+     * @param freq The frequency of the tone in Hz.
+     * @param durationMs The duration of the tone in milliseconds.
+     */
+    public static void renderToBuffer(PcmBuffer buffer, double freq, int durationMs) {
+        int rate = getSampleRate();
+        int samples = (int)(durationMs / 1000.0 * rate);
+        short[] block = new short[Math.min(samples, BLOCK_SAMPLES)];
+        Oscillator oscillator = new Oscillator(rate);
+        int increment = oscillator.increment(freq);
+        for (int done = 0; done < samples; done += block.length) {
+            int n = Math.min(block.length, samples - done);
+            for (int i = 0; i < n; i++) {
+                block[i] = (short)(oscillator.next(increment) * Short.MAX_VALUE);
+            }
+            buffer.write(block, 0, n);
+        }
+    }
+
+    /**
+     * Generates a sine wave tone with the specified frequency and duration and queues it for playback.
+     * Uses 16-bit PCM encoding and returns as soon as the tone is queued: consecutive sounds play back to back,
+     * without gaps and with continuous phase. Use {@link #drain()} to wait until they have been heard.
      * @throws LineUnavailableException if the audio line cannot be opened.
      */
     public void playTone() throws LineUnavailableException {
-        int numSamples = (int) ((duration / 1000.0) * SAMPLE_RATE); // Convert duration to number of audio samples
-        byte[] buffer = new byte[numSamples * 2];  // 16-bit PCM (2 bytes per sample)
-
-        // Generate sine wave samples
-        for (int i = 0; i < numSamples; i++) {
-            double angle = 2.0 * Math.PI * frequency * i / SAMPLE_RATE; // Calculate phase angle
-            short sample = (short) (Math.sin(angle) * Short.MAX_VALUE); // Convert sine wave to 16-bit sample
-            
-            // Store the sample in little-endian format (least significant byte first)
-            buffer[2 * i] = (byte) (sample & 0xFF);        // Lower 8 bits
-            buffer[2 * i + 1] = (byte) ((sample >> 8) & 0xFF); // Upper 8 bits
-        }
+        synchronized (PLAYBACK) {
+            int numSamples = samplesFor(duration); // Convert duration to number of audio samples
+            short[] samples = new short[numSamples];  // 16-bit PCM
+            int increment = playback.increment(frequency); // Phase step per sample
 
-        // Define the audio format (Mono, 16-bit, Little-endian)
-        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+            // Generate sine wave samples
+            for (int i = 0; i < numSamples; i++) {
+                samples[i] = (short) (playback.next(increment) * Short.MAX_VALUE); // Convert sine wave to 16-bit sample
+            }
 
-        // Open an audio line and play the generated sound
-        line = AudioSystem.getSourceDataLine(format);
-        line.open(format);  // Open the line with the specified format
-        line.start();       // Start playback
-        line.write(buffer, 0, buffer.length); // Send audio data to the speaker
-        line.drain();       // Ensure all audio is played before closing
-        line.close();       // Close the audio line
+            play(samples);
+        }
     }
 
     /**
-     * Plays an FSK-modulated signal.
+     * Generates an FSK-modulated signal and queues it for playback.
      * @throws LineUnavailableException if audio line cannot be opened.
      */
     public void playFSK() throws LineUnavailableException {
@@ -89,64 +159,119 @@ public class Sound {
             throw new IllegalStateException("FSK frequencies not set.");
         }
 
-        int numSamples = (int) ((duration / 1000.0) * SAMPLE_RATE);
-        byte[] buffer = new byte[numSamples * 2];
+        synchronized (PLAYBACK) {
+            int numSamples = samplesFor(duration);
+            short[] samples = new short[numSamples];
+            double fade = numSamples * 0.05; // 5% linear fade in and out
 
-        for (int i = 0; i < numSamples; i++) {
-            // Linearly interpolate the frequency between startFreq and endFreq
-            double freq = startFreq + (endFreq - startFreq) * (i / (double) numSamples);
-            double angle = 2.0 * Math.PI * freq * i / SAMPLE_RATE;
-            double amplitude = (i < numSamples * 0.05 || i > numSamples * 0.95) ? (i / (numSamples * 0.05)) : 1.0;
-            short sample = (short) (Math.sin(angle) * Short.MAX_VALUE * amplitude);
+            for (int i = 0; i < numSamples; i++) {
+                // Linearly interpolate the frequency between startFreq and endFreq
+                double freq = startFreq + (endFreq - startFreq) * (i / (double) numSamples);
+                double amplitude = i < fade ? i / fade : (i > numSamples - fade ? (numSamples - i) / fade : 1.0);
+                samples[i] = (short) (playback.next(freq) * Short.MAX_VALUE * amplitude);
+            }
 
-            // Store in little-endian format
-            buffer[2 * i] = (byte) (sample & 0xFF);
-            buffer[2 * i + 1] = (byte) ((sample >> 8) & 0xFF);
+            play(samples);
         }
-
-        // Define the audio format (Mono, 16-bit, Little-endian)
-        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
-
-        // Open an audio line and play the generated sound
-        line = AudioSystem.getSourceDataLine(format);
-        line.open(format);
-        line.start();
-        line.write(buffer, 0, buffer.length);
-        line.drain();
-        line.close();
     }
 
+    /**
+     * Generates a scan line, one frequency per pixel, and queues it for playback.
+     * @param frequencies frequency of every pixel in Hz
+     * @param scanDurationMs duration of the whole line in milliseconds
+     * @throws LineUnavailableException if audio line cannot be opened.
+     */
     public void playScanLine(double[] frequencies, int scanDurationMs) throws LineUnavailableException {
-        int totalSamples = (int) ((scanDurationMs / 1000.0) * SAMPLE_RATE);
-        int samplesPerPixel = totalSamples / frequencies.length;
-        byte[] buffer = new byte[totalSamples * 2];
-        double angle = 0.0;
+        synchronized (PLAYBACK) {
+            int totalSamples = samplesFor(scanDurationMs);
+            short[] samples = new short[totalSamples];
+
+            for (int i = 0; i < totalSamples; i++) {
+                int pixelIndex = (int) ((long) i * frequencies.length / totalSamples); // Exact pixel boundaries
+                double freq = frequencies[pixelIndex];
+                samples[i] = (short) (playback.next(freq) * Short.MAX_VALUE);
+            }
     
-        for (int i = 0; i < totalSamples; i++) {
-            int pixelIndex = Math.min(i / samplesPerPixel, frequencies.length - 1);
-            double freq = frequencies[pixelIndex];
-            angle += 2.0 * Math.PI * freq / SAMPLE_RATE;
-            short sample = (short) (Math.sin(angle) * Short.MAX_VALUE);
-            buffer[i * 2] = (byte) (sample & 0xFF);
-            buffer[i * 2 + 1] = (byte) ((sample >> 8) & 0xFF);
+            play(samples);
         }
-    
-        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
-        line = AudioSystem.getSourceDataLine(format);
-        line.open(format);
-        line.start();
-        line.write(buffer, 0, buffer.length);
-        line.drain();
-        line.close();
     }
 
+    /**
+     * Queues 16-bit little-endian mono PCM for playback.
+     * @param buffer PCM bytes at the engine sample rate
+     * @throws LineUnavailableException if the audio line cannot be opened.
+     */
     public static void playBuffer(byte[] buffer) throws LineUnavailableException {
-        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
-        SourceDataLine line = AudioSystem.getSourceDataLine(format);
-        line.open(format);
-        line.start();
-        line.write(buffer, 0, buffer.length);
-        line.drain();
-        line.close();
+        try {
+            getEngine().write(buffer, 0, buffer.length);
+        } catch (IOException e) {
+            Thread.currentThread().interrupt(); // Only an interrupt can stop the engine from queueing
+        }
+    }
+
+    /**
+     * Waits until every queued sound has been played.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static void drain() throws InterruptedException {
+        PlaybackEngine current;
+        synchronized (Sound.class) {
+            current = engine;
+        }
+        if (current != null) current.drain();
+    }
+
+    /**
+     * Gets the playback engine shared by every sound, opening the default audio output on first use
+     * at the configured sample rate (see {@link #setSampleRate(int)}).
+     * The output stays open for the lifetime of the application, or until the rate changes.
+     * @return shared playback engine
+     * @throws LineUnavailableException if the audio line cannot be opened.
+     */
+    public static synchronized PlaybackEngine getEngine() throws LineUnavailableException {
+        if (engine == null) {
+            engine = new PlaybackEngine(sampleRate);
+        }
+        return engine;
+    }
+
+    /**
+     * Plays a whole transmission on the shared engine. A rate change waits until it is over, so the engine
+     * stays open for all of it.
+     * @param transmission writes to the engine and waits until it has been heard
+     * @throws IOException if the transmission fails
+     * @throws LineUnavailableException if the audio line cannot be opened.
+     */
+    static void transmit(Transmission transmission) throws IOException, LineUnavailableException {
+        RATE.readLock().lock();
+        try {
+            transmission.play(getEngine());
+        } finally {
+            RATE.readLock().unlock();
+        }
+    }
+
+    // Work on the shared engine that a rate change must not interrupt
+    interface Transmission {
+        void play(PlaybackEngine engine) throws IOException;
     }
-}
\ No newline at end of file
+
+    // Sample count of the next queued sound, from the exact queued time so consecutive sounds never drift
+    private static int samplesFor(int durationMs) {
+        queuedMs += durationMs;
+        long end = queuedMs * getSampleRate() / 1000;
+        int samples = (int) (end - queuedSamples);
+        queuedSamples = end;
+        return samples;
+    }
+
+    // Queue a block of samples on the shared engine
+    private static void play(short[] samples) throws LineUnavailableException {
+        try {
+            getEngine().enqueue(samples, 0, samples.length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Give up on the sound, keep the interrupt for the caller
+        }
+    }
+}
+
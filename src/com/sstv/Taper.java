@@ -0,0 +1,28 @@
+package src.com.sstv;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Raised-cosine fade envelopes, computed once per length and shared.
+ */
+public class Taper {
+    private static final ConcurrentHashMap<Integer, double[]> RAMPS = new ConcurrentHashMap<>();
+
+    private Taper() {}
+
+    /**
+     * Gets a rising raised-cosine ramp: {@code ramp[k] = 0.5 - 0.5 * cos(PI * k / length)}.
+     * The returned array is shared and must not be modified.
+     * @param length ramp length in samples
+     * @return array of length + 1 gains going from 0 to 1
+     */
+    public static double[] ramp(int length) {
+        return RAMPS.computeIfAbsent(length, n -> {
+            double[] ramp = new double[n + 1];
+            for(int k = 0; k <= n; k++) {
+                ramp[k] = n == 0 ? 1.0 : 0.5 - 0.5 * Math.cos(Math.PI * k / n);
+            }
+            return ramp;
+        });
+    }
+}
@@ -0,0 +1,214 @@
+package src.com.sstv;
+
+/**
+ * Bank of single-frequency detectors evaluated together over a stream of samples.
+ * <p>
+ * Every new sample is correlated once with a precomputed phasor per frequency and accumulated into prefix
+ * sums, so all frequencies are tracked in a single pass over the audio. The power of any window of the
+ * tracked range is then read in O(1) from two prefix entries; it equals the Goertzel power of that window.
+ * Overlapping windows (sliding hunts, alignment refinement) therefore share all of their work instead of
+ * re-running a filter over every window.
+ * <p>
+ * The track mirrors a {@link SampleRingBuffer}: {@link #track(SampleRingBuffer)} catches up with samples
+ * appended to the buffer and {@link #discard(int)} must follow every skip of the buffer head.
+ */
+public class ToneDetector {
+    private final double[] frequencies;
+    private final double[] coefficients; // Goertzel coefficient 2cos(w) of every frequency
+    private final double[] stepCos, stepSin; // Per-sample phasor rotation of every frequency
+    private final double[] phaseCos, phaseSin; // Current phasor of every frequency
+    private double[][] re, im;           // Prefix sums of the correlation [bin][sample]
+    private double[] energy;             // Prefix sums of the squared samples
+    private float[] input = new float[0]; // Reusable copy of newly tracked samples
+    private int origin = 0;              // Prefix entry of the buffer head
+    private int length = 0;              // Samples tracked from the buffer head
+
+    /**
+     * Creates a detector bank
+     * @param sampleRate sample rate in Hz
+     * @param frequencies detected frequencies in Hz, addressed by their index
+     */
+    public ToneDetector(double sampleRate, double... frequencies) {
+        int bins = frequencies.length;
+        this.frequencies = frequencies.clone();
+        this.coefficients = new double[bins];
+        this.stepCos = new double[bins];
+        this.stepSin = new double[bins];
+        this.phaseCos = new double[bins];
+        this.phaseSin = new double[bins];
+        for(int bin = 0; bin < bins; bin++) {
+            double omega = 2 * Math.PI * frequencies[bin] / sampleRate;
+            coefficients[bin] = 2 * Math.cos(omega);
+            stepCos[bin] = Math.cos(omega);
+            stepSin[bin] = Math.sin(omega);
+            phaseCos[bin] = 1;
+        }
+        re = new double[bins][1024];
+        im = new double[bins][1024];
+        energy = new double[1024];
+    }
+
+    public int getBinCount() { return frequencies.length; }
+    public double getFrequency(int bin) { return frequencies[bin]; }
+
+    /**
+     * Gets the Goertzel coefficient of a frequency of the bank
+     * @param bin index of the frequency
+     * @return 2cos(2 pi f / Fs)
+     */
+    public double getCoefficient(int bin) { return coefficients[bin]; }
+
+    /**
+     * Finds a frequency of the bank
+     * @param frequency frequency in Hz
+     * @return its index, or -1 if the bank does not detect it
+     */
+    public int indexOf(double frequency) {
+        for(int bin = 0; bin < frequencies.length; bin++) {
+            if(frequencies[bin] == frequency) return bin;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the number of samples from the buffer head that can be queried
+     * @return tracked samples
+     */
+    public int size() { return length; }
+
+    /**
+     * Extends the track to every sample currently in the buffer
+     * @param buffer audio source, whose head must match the track (see {@link #discard(int)})
+     */
+    public void track(SampleRingBuffer buffer) {
+        int count = buffer.size() - length;
+        if(count <= 0) return;
+        ensureCapacity(length + count);
+        if(input.length < count) input = new float[count];
+        buffer.peek(length, input, count);
+
+        int first = origin + length;
+        double total = energy[first];
+        for(int i = 0; i < count; i++) {
+            total += input[i] * input[i];
+            energy[first + i + 1] = total;
+        }
+        for(int bin = 0; bin < frequencies.length; bin++) {
+            double[] sumRe = re[bin], sumIm = im[bin];
+            double rc = stepCos[bin], rs = stepSin[bin];
+            double rc2 = rc * rc - rs * rs, rs2 = 2 * rs * rc; // Rotation by two samples
+
+            // Even and odd samples use separate phasors, so the two rotations run independently
+            double c0 = phaseCos[bin], s0 = phaseSin[bin];
+            double c1 = c0 * rc - s0 * rs, s1 = s0 * rc + c0 * rs;
+            double accRe = sumRe[first], accIm = sumIm[first];
+            int i = 0;
+            for(; i + 1 < count; i += 2) {
+                double x0 = input[i], x1 = input[i + 1];
+                accRe += x0 * c0;
+                accIm -= x0 * s0;
+                sumRe[first + i + 1] = accRe;
+                sumIm[first + i + 1] = accIm;
+                accRe += x1 * c1;
+                accIm -= x1 * s1;
+                sumRe[first + i + 2] = accRe;
+                sumIm[first + i + 2] = accIm;
+                double next0 = c0 * rc2 - s0 * rs2;
+                s0 = s0 * rc2 + c0 * rs2;
+                c0 = next0;
+                double next1 = c1 * rc2 - s1 * rs2;
+                s1 = s1 * rc2 + c1 * rs2;
+                c1 = next1;
+            }
+            if(i < count) { // Odd sample left over, the odd phasor is the next one
+                accRe += input[i] * c0;
+                accIm -= input[i] * s0;
+                sumRe[first + i + 1] = accRe;
+                sumIm[first + i + 1] = accIm;
+                c0 = c1;
+                s0 = s1;
+            }
+            double norm = (3 - (c0 * c0 + s0 * s0)) / 2; // Keep the phasor on the unit circle
+            phaseCos[bin] = c0 * norm;
+            phaseSin[bin] = s0 * norm;
+        }
+        length += count;
+    }
+
+    /**
+     * Drops samples from the head of the track, mirroring a skip of the buffer
+     * @param count number of samples skipped from the buffer head
+     */
+    public void discard(int count) {
+        if(count >= length) {
+            for(int bin = 0; bin < frequencies.length; bin++) {
+                re[bin][0] = 0;
+                im[bin][0] = 0;
+            }
+            energy[0] = 0;
+            origin = 0;
+            length = 0;
+        } else if(count > 0) {
+            origin += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Forgets the whole track
+     */
+    public void reset() {
+        discard(length);
+    }
+
+    /**
+     * Gets the power of one frequency over a window of the track
+     * @param bin index of the frequency
+     * @param from first sample of the window, relative to the buffer head
+     * @param to end of the window (exclusive), relative to the buffer head
+     * @return Goertzel power of the window
+     */
+    public double power(int bin, int from, int to) {
+        if(from < 0 || to > length || to < from) {
+            throw new IndexOutOfBoundsException("Window " + from + "-" + to + " of " + length);
+        }
+        double dr = re[bin][origin + to] - re[bin][origin + from];
+        double di = im[bin][origin + to] - im[bin][origin + from];
+        return dr * dr + di * di;
+    }
+
+    /**
+     * Gets the share of the energy of a window held by one frequency
+     * @param bin index of the frequency
+     * @param from first sample of the window, relative to the buffer head
+     * @param to end of the window (exclusive), relative to the buffer head
+     * @return about 1 for a pure tone on the bin frequency, near 0 for noise or other tones
+     */
+    public double purity(int bin, int from, int to) {
+        double fullScale = (energy[origin + to] - energy[origin + from]) * (to - from) / 2; // Power of a pure tone
+        return power(bin, from, to) / (fullScale + 1e-12);
+    }
+
+    // Make room for the given number of tracked samples, moving the track back to the start of the arrays
+    private void ensureCapacity(int required) {
+        if(origin + required < re[0].length) return;
+        int capacity = re[0].length;
+        while(capacity <= required) capacity <<= 1;
+        for(int bin = 0; bin < frequencies.length; bin++) {
+            re[bin] = rebase(re[bin], capacity);
+            im[bin] = rebase(im[bin], capacity);
+        }
+        energy = rebase(energy, capacity);
+        origin = 0;
+    }
+
+    // Copy the live prefix sums to the start of an array, relative to the head so their magnitude stays small
+    private double[] rebase(double[] sums, int capacity) {
+        double[] target = capacity == sums.length ? sums : new double[capacity];
+        double base = sums[origin];
+        for(int i = 0; i <= length; i++) {
+            target[i] = sums[origin + i] - base;
+        }
+        return target;
+    }
+}
@@ -0,0 +1,451 @@
+package src.com.sstv;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * Bounded cache of rendered transmissions, for stations that send the same few images over and over.
+ * <p>
+ * Entries are keyed by a SHA-256 hash of the image pixels together with the mode and sample rate, so the same
+ * picture loaded from a different file still hits. The in-memory tier keeps whole transmissions as PCM and
+ * evicts the least recently used ones beyond its byte budget. An optional directory adds a second tier: every
+ * rendered transmission is also stored there as raw PCM, survives restarts and is played back memory-mapped,
+ * straight from the page cache; it has its own budget and least-recently-used eviction.
+ * <p>
+ * On a miss the transmission is rendered while it streams to the sink, so a first broadcast starts as quickly
+ * as without the cache. The last 1024 files are remembered by path, size and modification time, so a repeated
+ * {@link #transmit(File, Mode, int, PcmSink)} does not even decode the image. The cache is thread-safe; two
+ * threads missing on the same key at once both render it.
+ */
+public class TransmissionCache {
+    private static final String SUFFIX = ".pcm";
+    private static final int MAX_FILES = 1024; // Image files remembered, least recently used dropped first
+
+    private final long maxBytes;                     // Budget of the in-memory tier
+    private final Path directory;                    // On-disk tier, or null
+    private final long maxDiskBytes;                 // Budget of the on-disk tier
+    private final Map<Key, ByteBuffer> memory = new LinkedHashMap<>(16, 0.75f, true); // Access order, eldest first
+    private final Map<Key, Long> disk = new LinkedHashMap<>(16, 0.75f, true);         // File sizes, access order
+    private final Map<FileStamp, String> files = new LinkedHashMap<>(16, 0.75f, true) { // Pixel hash of recent files
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileStamp, String> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates an in-memory cache
+     * @param maxBytes PCM bytes kept in memory (a 269 s Scottie DX transmission at 44100 Hz takes 24 MB)
+     */
+    public TransmissionCache(long maxBytes) {
+        if(maxBytes < 0) throw new IllegalArgumentException("Negative cache size: " + maxBytes);
+        this.maxBytes = maxBytes;
+        this.directory = null;
+        this.maxDiskBytes = 0;
+    }
+
+    /**
+     * Creates a cache backed by a directory, picking up the transmissions already stored there
+     * @param maxBytes PCM bytes kept in memory
+     * @param directory directory of the on-disk tier, created if needed
+     * @param maxDiskBytes PCM bytes kept on disk
+     * @throws IOException if the directory cannot be created or listed
+     */
+    public TransmissionCache(long maxBytes, Path directory, long maxDiskBytes) throws IOException {
+        if(maxBytes < 0 || maxDiskBytes < 0) throw new IllegalArgumentException("Negative cache size: " + maxBytes + "/" + maxDiskBytes);
+        this.maxBytes = maxBytes;
+        this.directory = Files.createDirectories(directory);
+        this.maxDiskBytes = maxDiskBytes;
+
+        // Oldest first, so the stored files rank in the order they were last used
+        List<Path> stored = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            entries.forEach(stored::add);
+        }
+        Map<Path, FileTime> used = new HashMap<>();
+        for(Path path : stored) used.put(path, Files.getLastModifiedTime(path));
+        stored.sort((a, b) -> used.get(a).compareTo(used.get(b)));
+        for(Path path : stored) {
+            Key key = Key.parse(path.getFileName().toString());
+            if(key == null) continue;
+            long size = Files.size(path);
+            disk.put(key, size);
+            diskBytes += size;
+        }
+        synchronized (this) {
+            trimDisk();
+        }
+    }
+
+    /**
+     * Streams the transmission of an image file, rendering it only if it is not cached
+     * @param file image file
+     * @param mode transmission mode
+     * @param sampleRate sample rate in Hz
+     * @param sink destination of the PCM audio, left open
+     * @throws IOException if the image cannot be read or the sink cannot be written
+     */
+    public void transmit(File file, Mode mode, int sampleRate, PcmSink sink) throws IOException {
+        FileStamp stamp = new FileStamp(file);
+        String hash;
+        synchronized (this) {
+            hash = files.get(stamp);
+        }
+        if(hash != null && play(new Key(hash, mode, sampleRate), sink)) return;
+
+        BufferedImage img = ImageIO.read(file);
+        if(img == null) throw new IOException("Unsupported image format: " + file);
+        Key key = Key.of(img, mode, sampleRate);
+        synchronized (this) {
+            files.put(stamp, key.hash);
+        }
+        transmit(key, img, sink);
+    }
+
+    /**
+     * Streams the transmission of an image, rendering it only if it is not cached
+     * @param img image to transmit
+     * @param mode transmission mode
+     * @param sampleRate sample rate in Hz
+     * @param sink destination of the PCM audio, left open
+     * @throws IOException if the sink cannot be written
+     */
+    public void transmit(BufferedImage img, Mode mode, int sampleRate, PcmSink sink) throws IOException {
+        transmit(Key.of(img, mode, sampleRate), img, sink);
+    }
+
+    /**
+     * Gets a snapshot of the cache counters and sizes
+     * @return current statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits.get(), diskHits.get(), misses.get(), evictions.get(),
+            memory.size(), memoryBytes, disk.size(), diskBytes);
+    }
+
+    /**
+     * Drops every entry of the in-memory tier, keeping the on-disk tier
+     */
+    public synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    private void transmit(Key key, BufferedImage img, PcmSink sink) throws IOException {
+        if(play(key, sink)) return;
+        misses.incrementAndGet();
+        Recorder recorder = new Recorder(sink, Math.max(maxBytes, maxDiskBytes));
+        new SSTVImageEncoder(key.mode, key.sampleRate).encode(img, recorder);
+        if(recorder.overflow) return; // Larger than the whole cache
+        store(key, ByteBuffer.wrap(Arrays.copyOf(recorder.pcm, recorder.length)).asReadOnlyBuffer());
+    }
+
+    // Play a cached transmission, from memory or else from disk
+    private boolean play(Key key, PcmSink sink) throws IOException {
+        ByteBuffer pcm;
+        Path path = null;
+        synchronized (this) {
+            pcm = memory.get(key);
+            if(pcm == null && disk.get(key) != null) path = directory.resolve(key.fileName()); // get() ranks it as used
+        }
+        if(pcm != null) {
+            hits.incrementAndGet();
+            sink.write(pcm.duplicate());
+            return true;
+        }
+        if(path == null) return false;
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Stays valid after closing
+        } catch (IOException e) {
+            synchronized (this) { // Deleted or unreadable behind our back: render it again
+                Long size = disk.remove(key);
+                if(size != null) diskBytes -= size;
+            }
+            return false;
+        }
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis())); // Rank after restarts
+        } catch (IOException e) {
+            // Read-only directory or another owner: the entry is still good, only its rank after a restart is stale
+        }
+        diskHits.incrementAndGet();
+        sink.write(mapped);
+        return true;
+    }
+
+    // Add a freshly rendered transmission to both tiers
+    private void store(Key key, ByteBuffer pcm) throws IOException {
+        if(directory != null) {
+            Path path = directory.resolve(key.fileName());
+            Path temp = Files.createTempFile(directory, "render", ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer data = pcm.duplicate();
+                while(data.hasRemaining()) channel.write(data);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                Long previous = disk.put(key, (long)pcm.remaining());
+                diskBytes += pcm.remaining() - (previous != null ? previous : 0);
+                trimDisk();
+            }
+        }
+
+        if(pcm.remaining() > maxBytes) return;
+        synchronized (this) {
+            ByteBuffer previous = memory.put(key, pcm);
+            memoryBytes += pcm.remaining() - (previous != null ? previous.remaining() : 0);
+            for(Iterator<ByteBuffer> eldest = memory.values().iterator(); memoryBytes > maxBytes; ) {
+                memoryBytes -= eldest.next().remaining();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    // Delete the least recently used files beyond the disk budget
+    private void trimDisk() {
+        for(Iterator<Map.Entry<Key, Long>> eldest = disk.entrySet().iterator(); diskBytes > maxDiskBytes; ) {
+            Map.Entry<Key, Long> entry = eldest.next();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey().fileName()));
+            } catch (IOException e) {
+                // Left behind, picked up again on the next start
+            }
+            diskBytes -= entry.getValue();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Identity of a transmission: the pixels of the image, the mode and the sample rate
+     */
+    public static final class Key {
+        private final String hash; // SHA-256 of the image size and pixels, in hex
+        private final Mode mode;
+        private final int sampleRate;
+
+        private Key(String hash, Mode mode, int sampleRate) {
+            this.hash = hash;
+            this.mode = mode;
+            this.sampleRate = sampleRate;
+        }
+
+        /**
+         * Computes the key of an image
+         * @param img image, any pixel layout (alpha is ignored, as when encoding)
+         * @param mode transmission mode
+         * @param sampleRate sample rate in Hz
+         * @return key of the transmission
+         */
+        public static Key of(BufferedImage img, Mode mode, int sampleRate) {
+            MessageDigest digest = sha256();
+            int width = img.getWidth();
+            ByteBuffer bytes = ByteBuffer.allocate(width * 4).order(ByteOrder.BIG_ENDIAN);
+            IntBuffer pixels = bytes.asIntBuffer();
+            digest.update(bytes.putInt(0, width).putInt(4, img.getHeight()).array(), 0, 8);
+
+            int[] row = new int[width];
+            byte[] staging = img.getType() == BufferedImage.TYPE_3BYTE_BGR ? new byte[width * 3] : null;
+            for(int y = 0; y < img.getHeight(); y++) {
+                ScanFrame.readRow(img, y, row, staging);
+                for(int x = 0; x < width; x++) row[x] &= 0xFFFFFF;
+                pixels.clear();
+                pixels.put(row);
+                digest.update(bytes.array());
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for(byte b : digest.digest()) hex.append(String.format("%02x", b));
+            return new Key(hex.toString(), mode, sampleRate);
+        }
+
+        public Mode getMode() { return mode; }
+        public int getSampleRate() { return sampleRate; }
+
+        // Name of the file holding the transmission in the on-disk tier
+        String fileName() {
+            return hash + "-" + mode.name() + "-" + sampleRate + SUFFIX;
+        }
+
+        // Key of a stored file, or null for anything else
+        static Key parse(String fileName) {
+            String[] parts = fileName.substring(0, fileName.length() - SUFFIX.length()).split("-");
+            if(parts.length != 3) return null;
+            try {
+                return new Key(parts[0], Mode.valueOf(parts[1]), Integer.parseInt(parts[2]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) return false;
+            Key other = (Key)o;
+            return hash.equals(other.hash) && mode == other.mode && sampleRate == other.sampleRate;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hash, mode, sampleRate);
+        }
+
+        @Override
+        public String toString() {
+            return fileName();
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is required on every Java platform", e);
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the cache counters and sizes
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long diskHits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+        private final int diskEntries;
+        private final long diskBytes;
+
+        Stats(long hits, long diskHits, long misses, long evictions, int entries, long bytes, int diskEntries, long diskBytes) {
+            this.hits = hits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.diskEntries = diskEntries;
+            this.diskBytes = diskBytes;
+        }
+
+        /** @return transmissions played from memory */
+        public long getHits() { return hits; }
+        /** @return transmissions played from the on-disk tier */
+        public long getDiskHits() { return diskHits; }
+        /** @return transmissions that had to be rendered */
+        public long getMisses() { return misses; }
+        /** @return entries dropped from either tier to stay within budget */
+        public long getEvictions() { return evictions; }
+        public int getEntries() { return entries; }
+        public long getBytes() { return bytes; }
+        public int getDiskEntries() { return diskEntries; }
+        public long getDiskBytes() { return diskBytes; }
+
+        @Override
+        public String toString() {
+            return String.format("hits %d (disk %d), misses %d, evictions %d, %d entries / %d bytes in memory, %d / %d on disk",
+                hits + diskHits, diskHits, misses, evictions, entries, bytes, diskEntries, diskBytes);
+        }
+    }
+
+    // Identity of an image file as last seen
+    private static final class FileStamp {
+        private final Path path;
+        private final long size;
+        private final long modified;
+
+        FileStamp(File file) {
+            this.path = file.toPath().toAbsolutePath().normalize();
+            this.size = file.length();
+            this.modified = file.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof FileStamp)) return false;
+            FileStamp other = (FileStamp)o;
+            return path.equals(other.path) && size == other.size && modified == other.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, modified);
+        }
+    }
+
+    // Passes audio on to the real sink while keeping a copy, up to a limit
+    private static final class Recorder implements PcmSink {
+        private final PcmSink sink;
+        private final long limit;
+        byte[] pcm = new byte[1 << 20];
+        int length = 0;
+        boolean overflow = false;
+
+        Recorder(PcmSink sink, long limit) {
+            this.sink = sink;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int count) throws IOException {
+            sink.write(data, offset, count);
+            record(ByteBuffer.wrap(data, offset, count));
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            ByteBuffer copy = data.duplicate();
+            sink.write(data);
+            record(copy);
+        }
+
+        private void record(ByteBuffer data) {
+            if(overflow) return;
+            int count = data.remaining();
+            if((long)length + count > Math.min(limit, Integer.MAX_VALUE - 8)) {
+                overflow = true;
+                pcm = null;
+                return;
+            }
+            if(length + count > pcm.length) {
+                pcm = Arrays.copyOf(pcm, (int)Math.min(Integer.MAX_VALUE - 8, Math.max(2L * pcm.length, length + count)));
+            }
+            data.get(pcm, length, count);
+            length += count;
+        }
+    }
+}
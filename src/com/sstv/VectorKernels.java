@@ -0,0 +1,109 @@
+package src.com.sstv;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link SignalKernels} on the JDK Vector API, one hardware vector of samples per operation.
+ * Only loaded by {@link SignalKernels#get()} when the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorKernels extends SignalKernels {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final int QUARTER_TURN = 1 << 30;
+    private static final int RESEED_BLOCKS = 64; // Vectors mixed between exact oscillator phases
+
+    VectorKernels() {}
+
+    @Override
+    public boolean isVectorized() { return true; }
+
+    @Override
+    public int getLanes() { return LANES; }
+
+    @Override
+    public int getScratchLength() { return 2 * LANES; } // Oscillator seeds, cosines then sines
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int count) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int k = 0;
+        for(int bound = SPECIES.loopBound(count); k < bound; k += LANES) {
+            sum = FloatVector.fromArray(SPECIES, a, aOffset + k).fma(FloatVector.fromArray(SPECIES, b, bOffset + k), sum);
+        }
+        float total = sum.reduceLanes(VectorOperators.ADD);
+        for(; k < count; k++) {
+            total += a[aOffset + k] * b[bOffset + k];
+        }
+        return total;
+    }
+
+    // One vector of consecutive outputs at a time, each tap broadcast across it
+    @Override
+    public void fir(float[] input, int offset, float[] taps, float[] output, int outOffset, int count) {
+        int n = 0;
+        for(int bound = SPECIES.loopBound(count); n < bound; n += LANES) {
+            FloatVector sum = FloatVector.zero(SPECIES);
+            for(int k = 0; k < taps.length; k++) {
+                sum = FloatVector.fromArray(SPECIES, input, offset + n + k).fma(FloatVector.broadcast(SPECIES, taps[k]), sum);
+            }
+            sum.intoArray(output, outOffset + n);
+        }
+        for(; n < count; n++) {
+            output[outOffset + n] = super.dot(taps, 0, input, offset + n, taps.length);
+        }
+    }
+
+    // Every lane holds the oscillator of one sample of the vector; all of them rotate by a whole vector per step.
+    // The rotation is re-seeded from the exact phase now and then, so float rounding cannot build up.
+    @Override
+    public void mix(float[] input, int count, int phase, int increment, float[] i, float[] q, int outOffset, float[] scratch) {
+        float stepCos = Oscillator.sine(LANES * increment + QUARTER_TURN);
+        float stepSin = Oscillator.sine(LANES * increment);
+        int n = 0;
+        for(int bound = SPECIES.loopBound(count); n < bound; ) {
+            for(int lane = 0; lane < LANES; lane++) {
+                int at = phase + (n + lane) * increment;
+                scratch[lane] = Oscillator.sine(at + QUARTER_TURN);
+                scratch[LANES + lane] = Oscillator.sine(at);
+            }
+            FloatVector loCos = FloatVector.fromArray(SPECIES, scratch, 0);
+            FloatVector loSin = FloatVector.fromArray(SPECIES, scratch, LANES);
+            for(int end = Math.min(bound, n + RESEED_BLOCKS * LANES); n < end; n += LANES) {
+                FloatVector x = FloatVector.fromArray(SPECIES, input, n);
+                x.mul(loCos).intoArray(i, outOffset + n);
+                x.mul(loSin).neg().intoArray(q, outOffset + n);
+                FloatVector nextCos = loCos.mul(stepCos).sub(loSin.mul(stepSin));
+                loSin = loSin.mul(stepCos).add(loCos.mul(stepSin));
+                loCos = nextCos;
+            }
+        }
+        for(; n < count; n++) {
+            int at = phase + n * increment;
+            float x = input[n];
+            i[outOffset + n] = x * Oscillator.sine(at + QUARTER_TURN);
+            q[outOffset + n] = -x * Oscillator.sine(at);
+        }
+    }
+
+    @Override
+    public void lagProducts(float[] i, float[] q, int count, float[] cross, float[] dot) {
+        int n = 0;
+        for(int bound = SPECIES.loopBound(count); n < bound; n += LANES) {
+            FloatVector i0 = FloatVector.fromArray(SPECIES, i, n), i1 = FloatVector.fromArray(SPECIES, i, n + 1);
+            FloatVector q0 = FloatVector.fromArray(SPECIES, q, n), q1 = FloatVector.fromArray(SPECIES, q, n + 1);
+            i0.mul(q1).sub(q0.mul(i1)).intoArray(cross, n);
+            i0.mul(i1).add(q0.mul(q1)).intoArray(dot, n);
+        }
+        for(; n < count; n++) {
+            cross[n] = i[n] * q[n + 1] - q[n] * i[n + 1];
+            dot[n] = i[n] * i[n + 1] + q[n] * q[n + 1];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "vector (" + SPECIES + ")";
+    }
+}
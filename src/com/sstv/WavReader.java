@@ -0,0 +1,197 @@
+package src.com.sstv;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Reads 16-bit PCM recordings of any size by memory-mapping them.
+ * <p>
+ * WAV files (RIFF, and RF64 for data beyond 4 GB) are parsed for their format and data chunk; headerless PCM
+ * is opened with a given format. The samples are never read through a stream: {@link #window(long, int)}
+ * returns a little-endian {@link ShortBuffer} view straight onto the mapped file, which the decoder consumes
+ * directly (see {@link SSTVDecoder#processAudio(ShortBuffer)}).
+ * <p>
+ * A single mapping is limited to 2 GB, so the data is mapped once, when opened, as consecutive regions of
+ * 1 GB that overlap by the largest window. Every window then lies inside one region, and since the regions
+ * are never changed afterwards, windows may be taken from any number of threads at once. Mapping only
+ * reserves address space; pages are read from the file as they are touched.
+ */
+public class WavReader implements AutoCloseable {
+    private static final long REGION_STEP = 1L << 30;        // Bytes between the starts of mapped regions
+    public static final int MAX_WINDOW_BYTES = 1 << 24;      // Largest window, and the overlap of the regions
+    private static final int CHUNK_BODY_BYTES = 64;          // Bytes of a format or ds64 chunk read, enough for every field used
+
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int channels;
+    private final long dataOffset;  // File position of the first sample
+    private final long dataBytes;   // Whole frames of sample data
+    private final MappedByteBuffer[] regions;
+
+    private WavReader(FileChannel channel, int sampleRate, int channels, long dataOffset, long dataBytes) throws IOException {
+        this.channel = channel;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.dataOffset = dataOffset;
+        this.dataBytes = dataBytes - dataBytes % (2L * channels);
+        int count = (int)Math.max(1, (this.dataBytes + REGION_STEP - 1) / REGION_STEP);
+        this.regions = new MappedByteBuffer[count];
+        for(int r = 0; r < count; r++) {
+            long start = r * REGION_STEP;
+            long size = Math.min(REGION_STEP + MAX_WINDOW_BYTES, this.dataBytes - start);
+            regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start, Math.max(0, size));
+        }
+    }
+
+    /**
+     * Opens a WAV file of 16-bit PCM
+     * @param path file to read
+     * @return reader over the data chunk
+     * @throws IOException if the file cannot be read
+     * @throws UnsupportedAudioFileException if the file is not a WAV file of 16-bit integer PCM
+     */
+    public static WavReader open(Path path) throws IOException, UnsupportedAudioFileException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return parse(channel, path);
+        } catch (IOException | UnsupportedAudioFileException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a file of headerless 16-bit little-endian PCM
+     * @param path file to read
+     * @param sampleRate sample rate in Hz
+     * @param channels number of interleaved channels
+     * @return reader over the whole file
+     * @throws IOException if the file cannot be read
+     */
+    public static WavReader openRaw(Path path, int sampleRate, int channels) throws IOException {
+        if(sampleRate < 1 || channels < 1) throw new IllegalArgumentException("Invalid format " + sampleRate + " Hz x " + channels);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new WavReader(channel, sampleRate, channels, 0, channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getSampleRate() { return sampleRate; }
+    public int getChannels() { return channels; }
+
+    /**
+     * Gets the length of the recording
+     * @return number of sample frames (one sample per channel)
+     */
+    public long getFrameCount() {
+        return dataBytes / (2L * channels);
+    }
+
+    /**
+     * Gets the format of the samples
+     * @return 16-bit signed little-endian PCM
+     */
+    public AudioFormat getFormat() {
+        return new AudioFormat(sampleRate, 16, channels, true, false);
+    }
+
+    /**
+     * Gets a view of part of the recording without copying it
+     * @param frame first sample frame
+     * @param frames number of frames, at most {@link #MAX_WINDOW_BYTES} bytes
+     * @return little-endian view of the interleaved samples, position 0 and limit frames * channels
+     */
+    public ShortBuffer window(long frame, int frames) {
+        long offset = frame * 2 * channels;
+        long length = (long)frames * 2 * channels;
+        if(frame < 0 || frames < 0 || length > MAX_WINDOW_BYTES || offset > dataBytes - length) {
+            throw new IndexOutOfBoundsException("Window " + frame + "+" + frames + " of " + getFrameCount() + " frames");
+        }
+        int region = (int)Math.min(offset / REGION_STEP, regions.length - 1);
+        int at = (int)(offset - region * REGION_STEP);
+        return regions[region].slice(at, (int)length).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close(); // The mappings stay valid until they are garbage collected
+    }
+
+    // Walk the chunks up to the data chunk by their declared sizes, taking the format from "fmt " and 64-bit
+    // sizes from "ds64"; only chunk headers and the bodies of those two are read, however large the others are
+    private static WavReader parse(FileChannel channel, Path path) throws IOException, UnsupportedAudioFileException {
+        long fileSize = channel.size();
+        if(fileSize < 12) throw new UnsupportedAudioFileException("Not a WAV file: " + path);
+        ByteBuffer header = read(channel, 0, 12, path);
+        int riff = header.getInt();
+        header.getInt(); // RIFF size, unreliable for files written while recording
+        boolean rf64 = riff == fourCC("RF64");
+        if((riff != fourCC("RIFF") && !rf64) || header.getInt() != fourCC("WAVE")) {
+            throw new UnsupportedAudioFileException("Not a WAV file: " + path);
+        }
+
+        int format = -1, channels = 0, sampleRate = 0, bits = 0;
+        long ds64Data = -1;
+        for(long chunk = 12; chunk <= fileSize - 8; ) {
+            ByteBuffer chunkHeader = read(channel, chunk, 8, path);
+            int id = chunkHeader.getInt();
+            long size = chunkHeader.getInt() & 0xFFFFFFFFL;
+            long body = chunk + 8;
+            if(id == fourCC("data")) {
+                if(format != 1 || bits != 16) {
+                    throw new UnsupportedAudioFileException("Expected 16-bit integer PCM in " + path + " but got format "
+                        + format + ", " + bits + " bits");
+                }
+                long available = fileSize - body;
+                if(rf64 && size == 0xFFFFFFFFL && ds64Data >= 0) size = ds64Data;
+                return new WavReader(channel, sampleRate, channels, body, Math.min(size, available)); // Clamp unfinished files
+            }
+            if(id == fourCC("ds64") && size >= 16) {
+                ByteBuffer ds64 = read(channel, body, 16, path);
+                ds64.getLong(); // RIFF size
+                ds64Data = ds64.getLong();
+            } else if(id == fourCC("fmt ") && size >= 16) {
+                ByteBuffer fmt = read(channel, body, (int)Math.min(size, CHUNK_BODY_BYTES), path);
+                format = fmt.getShort() & 0xFFFF;
+                channels = fmt.getShort() & 0xFFFF;
+                sampleRate = fmt.getInt();
+                fmt.getInt();   // Byte rate
+                fmt.getShort(); // Block align
+                bits = fmt.getShort() & 0xFFFF;
+                if(format == 0xFFFE && size >= 26) { // WAVE_FORMAT_EXTENSIBLE: the real format leads the sub-format GUID
+                    fmt.position(24);
+                    format = fmt.getShort() & 0xFFFF;
+                }
+                if(channels < 1 || sampleRate < 1) throw new UnsupportedAudioFileException("Invalid format chunk in " + path);
+            }
+            chunk = body + size + (size & 1); // Chunks are padded to an even length
+        }
+        throw new UnsupportedAudioFileException("No data chunk in " + path);
+    }
+
+    // Read a few bytes of the file at a position
+    private static ByteBuffer read(FileChannel channel, long position, int bytes, Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while(buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if(n < 0) throw new EOFException("Truncated chunk in " + path);
+        }
+        return buffer.flip();
+    }
+
+    private static int fourCC(String id) {
+        return (id.charAt(0)) | (id.charAt(1) << 8) | (id.charAt(2) << 16) | (id.charAt(3) << 24);
+    }
+}
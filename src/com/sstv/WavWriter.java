@@ -0,0 +1,81 @@
+package src.com.sstv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams 16-bit mono PCM into a WAV file.
+ * The RIFF header is written with placeholder sizes and patched when the writer is closed,
+ * so the total length does not need to be known up front.
+ */
+public class WavWriter implements PcmSink {
+    private static final int HEADER_BYTES = 44;
+
+    private final FileChannel channel;
+    private final int sampleRate;
+    private long dataBytes = 0;
+
+    /**
+     * Creates (or truncates) a WAV file
+     * @param path file to write
+     * @param sampleRate sample rate in Hz
+     * @throws IOException if the file cannot be opened
+     */
+    public WavWriter(Path path, int sampleRate) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        this.sampleRate = sampleRate;
+        writeFully(header(0), 0);
+    }
+
+    @Override
+    public void write(byte[] pcm, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(pcm, offset, length));
+    }
+
+    @Override
+    public void write(ByteBuffer pcm) throws IOException {
+        int length = pcm.remaining();
+        writeFully(pcm, HEADER_BYTES + dataBytes); // Direct buffers go to the file without an intermediate copy
+        dataBytes += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if(dataBytes > 0xFFFFFFFFL - HEADER_BYTES) {
+                throw new IOException("WAV data exceeds 4 GB: " + dataBytes + " bytes");
+            }
+            writeFully(header(dataBytes), 0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Canonical 44-byte PCM header
+    private ByteBuffer header(long dataLength) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'R', 'I', 'F', 'F'}).putInt((int)(36 + dataLength));
+        header.put(new byte[]{'W', 'A', 'V', 'E'});
+        header.put(new byte[]{'f', 'm', 't', ' '}).putInt(16);
+        header.putShort((short)1);              // PCM
+        header.putShort((short)1);              // Mono
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * 2);          // Byte rate
+        header.putShort((short)2);              // Block align
+        header.putShort((short)16);             // Bits per sample
+        header.put(new byte[]{'d', 'a', 't', 'a'}).putInt((int)dataLength);
+        header.flip();
+        return header;
+    }
+
+    private void writeFully(ByteBuffer block, long position) throws IOException {
+        while(block.hasRemaining()) {
+            position += channel.write(block, position);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package tests;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.SourceDataLine;
+import src.com.sstv.PlaybackEngine;
+
+/**
+ * Headless checks of {@link PlaybackEngine} against a simulated sound card that plays in real time.
+ * <p>
+ * Run after {@code mvn test-compile} with
+ * {@code java -cp target/classes:target/test-classes tests.PlaybackEngineCheck}; exits with status 1 on a failure.
+ */
+public class PlaybackEngineCheck {
+    private static final int RATE = 8000;   // Samples per second of the simulated line
+    private static final int LINE_MS = 100; // Buffer of the simulated line
+    private static final int BLOCK = RATE / 100; // Samples of one 10 ms engine block
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        gaplessPulses();
+        backpressure();
+        offerRefusesWhenFull();
+        underruns();
+        oddBytes();
+        lineFailure();
+        closeDuringWrites();
+        System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    // 200 queued 9 ms pulses play back to back, without a byte lost or an underrun
+    private static void gaplessPulses() throws Exception {
+        SimulatedLine line = new SimulatedLine();
+        PlaybackEngine engine = new PlaybackEngine(line.proxy(), RATE, LINE_MS, 500);
+        short[] pulse = new short[RATE * 9 / 1000];
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            engine.enqueue(pulse, 0, pulse.length);
+        }
+        engine.drain();
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        check("pulses played in " + ms + " ms", ms >= 1800 - LINE_MS && ms < 1800 + 2 * LINE_MS);
+        check("pulse bytes", line.written.get() == 200 * pulse.length * 2);
+        check("no underruns between pulses", engine.getUnderruns() == 0);
+        engine.close();
+    }
+
+    // A producer ahead of the sound card waits once the whole queue is full
+    private static void backpressure() throws Exception {
+        PlaybackEngine engine = new PlaybackEngine(new SimulatedLine().proxy(), RATE, LINE_MS, 500);
+        short[] second = new short[RATE];
+        long start = System.nanoTime();
+        engine.enqueue(second, 0, second.length);
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        check("1 s queued ahead of a 500 ms queue took " + ms + " ms", ms >= 500 - LINE_MS - 50);
+        check("queue at most 500 ms", engine.getQueuedMs() <= 500);
+        engine.close();
+    }
+
+    // offer() queues all of the samples or none, and never waits
+    private static void offerRefusesWhenFull() throws Exception {
+        SimulatedLine line = new SimulatedLine();
+        line.paused = true; // Nothing leaves the queue
+        PlaybackEngine engine = new PlaybackEngine(line.proxy(), RATE, LINE_MS, 100);
+        short[] samples = new short[20 * BLOCK];
+        check("offer beyond the queue refused", !engine.offer(samples, 0, samples.length));
+        check("refused offer queued nothing", engine.getQueuedMs() == 0);
+        check("offer within the queue accepted", engine.offer(samples, 0, 5 * BLOCK));
+        line.paused = false;
+        engine.close();
+    }
+
+    // Audio arriving after the line played everything is an underrun, a pause after a drain is not
+    private static void underruns() throws Exception {
+        PlaybackEngine engine = new PlaybackEngine(new SimulatedLine().proxy(), RATE, LINE_MS, 500);
+        short[] tone = new short[RATE / 10];
+        engine.enqueue(tone, 0, tone.length);
+        engine.drain();
+        Thread.sleep(300);
+        engine.enqueue(tone, 0, tone.length);
+        engine.drain();
+        check("pause after drain not counted", engine.getUnderruns() == 0);
+        engine.enqueue(tone, 0, tone.length);
+        Thread.sleep(300); // The line runs dry
+        engine.enqueue(tone, 0, tone.length);
+        engine.drain();
+        check("starved write counted", engine.getUnderruns() == 1);
+        engine.close();
+    }
+
+    // A byte stream split inside a sample reaches the line as whole samples only
+    private static void oddBytes() throws Exception {
+        SimulatedLine line = new SimulatedLine();
+        PlaybackEngine engine = new PlaybackEngine(line.proxy(), RATE, LINE_MS, 500);
+        byte[] data = new byte[1001];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+        engine.write(data, 0, 3);
+        engine.write(data, 3, 998);
+        engine.drain(); // Drops the last, unpaired byte
+        byte[] played = line.bytes.toByteArray();
+        boolean same = played.length == 1000;
+        for (int i = 0; same && i < played.length; i++) same = played[i] == data[i];
+        check("split samples rejoined", same);
+        check("no odd write reached the line", !line.oddWrite);
+        engine.close();
+    }
+
+    // A failing line releases blocked producers and drains with the cause
+    private static void lineFailure() throws Exception {
+        SimulatedLine line = new SimulatedLine();
+        PlaybackEngine engine = new PlaybackEngine(line.proxy(), RATE, LINE_MS, 100);
+        line.failure = new IllegalStateException("device gone");
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100; i++) engine.write(new byte[4000], 0, 4000);
+            } catch (Exception e) {
+                // Expected
+            }
+        });
+        producer.start();
+        Thread.sleep(100);
+        try {
+            engine.drain();
+            check("drain reports the failure", false);
+        } catch (IllegalStateException e) {
+            check("drain reports the failure", e.getCause() == line.failure);
+        }
+        producer.join(2000);
+        check("blocked producer released", !producer.isAlive());
+        engine.close();
+    }
+
+    // Everything accepted before close() is played; later writes are refused
+    private static void closeDuringWrites() throws Exception {
+        SimulatedLine line = new SimulatedLine();
+        PlaybackEngine engine = new PlaybackEngine(line.proxy(), RATE, LINE_MS, 200);
+        AtomicInteger accepted = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            short[] block = new short[BLOCK];
+            try {
+                while (true) {
+                    engine.enqueue(block, 0, block.length);
+                    accepted.incrementAndGet();
+                }
+            } catch (IllegalStateException | InterruptedException e) {
+                // Closed
+            }
+        });
+        producer.start();
+        Thread.sleep(300);
+        engine.close();
+        producer.join(2000);
+        check("producer stopped by close", !producer.isAlive());
+        check("accepted " + accepted.get() + " blocks, played " + line.written.get() / (2 * BLOCK),
+            line.written.get() == accepted.get() * 2 * BLOCK);
+    }
+
+    private static void check(String what, boolean ok) {
+        System.out.println((ok ? "ok   " : "FAIL ") + what);
+        if (!ok) failures++;
+    }
+
+    // Line that plays its buffer at RATE in real time; only the methods the engine calls do anything
+    private static final class SimulatedLine implements InvocationHandler {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final AtomicInteger written = new AtomicInteger();
+        volatile boolean paused;
+        volatile RuntimeException failure;
+        volatile boolean oddWrite;
+        private int bufferBytes = 2 * RATE * LINE_MS / 1000;
+        private long emptyAt = System.nanoTime(); // When the buffered audio has played
+
+        SourceDataLine proxy() {
+            return (SourceDataLine) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { SourceDataLine.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "open":
+                    if (args != null && args.length == 2) bufferBytes = (Integer) args[1];
+                    return null;
+                case "write":
+                    return write((byte[]) args[0], (Integer) args[1], (Integer) args[2]);
+                case "available":
+                    return bufferBytes - buffered();
+                case "getBufferSize":
+                    return bufferBytes;
+                case "drain":
+                    while (buffered() > 0) Thread.sleep(1);
+                    return null;
+                default:
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class) return false;
+                    if (type == int.class) return 0;
+                    if (type == long.class) return 0L;
+                    return null;
+            }
+        }
+
+        private int write(byte[] data, int offset, int length) throws InterruptedException {
+            if (failure != null) throw failure;
+            if (length % 2 != 0) oddWrite = true;
+            while (paused || buffered() + length > Math.max(bufferBytes, length)) Thread.sleep(1);
+            synchronized (this) {
+                emptyAt = Math.max(emptyAt, System.nanoTime()) + length * 1_000_000_000L / (2 * RATE);
+                bytes.write(data, offset, length);
+            }
+            written.addAndGet(length);
+            return length;
+        }
+
+        private synchronized int buffered() {
+            long left = emptyAt - System.nanoTime();
+            return left <= 0 ? 0 : (int) (left * 2 * RATE / 1_000_000_000L);
+        }
+    }
+}
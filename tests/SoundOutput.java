@@ -24,8 +24,11 @@ public class SoundOutput {
             for (Sound sound : sinArr) {
                 sound.playTone();
             }    
+            Sound.drain(); // Playing is queued, wait for it before the JVM exits
         } catch (LineUnavailableException e) {
             System.err.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
             
     }
@@ -0,0 +1,150 @@
+package tests;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import src.com.sstv.Mode;
+import src.com.sstv.PcmSink;
+import src.com.sstv.SSTVImageEncoder;
+import src.com.sstv.TransmissionCache;
+
+/**
+ * Headless checks of {@link TransmissionCache}: least-recently-used eviction in memory and on disk, the on-disk
+ * tier across restarts, and image files replaced behind its back. Every transmission played from the cache must
+ * equal a fresh render.
+ * <p>
+ * Run after {@code mvn test-compile} with
+ * {@code java -cp target/classes:target/test-classes tests.TransmissionCacheCheck}; exits with status 1 on a failure.
+ */
+public class TransmissionCacheCheck {
+    private static final Mode MODE = Mode.ROBOT_36;
+    private static final int RATE = 8000;
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        BufferedImage[] images = new BufferedImage[3];
+        byte[][] rendered = new byte[images.length][];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = image(i);
+            rendered[i] = new SSTVImageEncoder(MODE, RATE).encodeToArray(images[i]);
+        }
+        long size = rendered[0].length;
+
+        Path dir = Files.createTempDirectory("transmissioncache");
+        try {
+            memoryTier(images, rendered, size);
+            diskTier(images, rendered, size, dir.resolve("cache"));
+            imageFiles(images, rendered, size, dir);
+        } finally {
+            delete(dir.toFile());
+        }
+        System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    // Room for two transmissions: A, B, A, C evicts B, the least recently used
+    private static void memoryTier(BufferedImage[] images, byte[][] rendered, long size) throws Exception {
+        TransmissionCache cache = new TransmissionCache(2 * size);
+        boolean same = play(cache, images, rendered, 0) & play(cache, images, rendered, 1)
+            & play(cache, images, rendered, 0) & play(cache, images, rendered, 2);
+        check("memory: replays equal a fresh render", same);
+        TransmissionCache.Stats stats = cache.getStats();
+        check("memory: one hit, three misses, one eviction " + stats,
+            stats.getHits() == 1 && stats.getMisses() == 3 && stats.getEvictions() == 1 && stats.getEntries() == 2);
+        play(cache, images, rendered, 0);
+        play(cache, images, rendered, 1);
+        stats = cache.getStats();
+        check("memory: A kept, B evicted " + stats, stats.getHits() == 2 && stats.getMisses() == 4);
+
+        TransmissionCache small = new TransmissionCache(size - 1);
+        play(small, images, rendered, 0);
+        check("memory: larger than the budget, still played", play(small, images, rendered, 0));
+        check("memory: larger than the budget, not kept", small.getStats().getEntries() == 0 && small.getStats().getMisses() == 2);
+    }
+
+    // Disk only, room for two: the evicted file is deleted, and a restart keeps the same ranking
+    private static void diskTier(BufferedImage[] images, byte[][] rendered, long size, Path directory) throws Exception {
+        TransmissionCache cache = new TransmissionCache(0, directory, 2 * size);
+        boolean same = true;
+        for (int i : new int[] { 0, 1, 0, 2 }) {
+            same &= play(cache, images, rendered, i);
+            Thread.sleep(20); // Distinct modification times rank the files after a restart
+        }
+        check("disk: replays equal a fresh render", same);
+        TransmissionCache.Stats stats = cache.getStats();
+        check("disk: one hit, one eviction " + stats, stats.getDiskHits() == 1 && stats.getEvictions() == 1);
+        check("disk: two files left", files(directory) == 2 && stats.getDiskBytes() == 2 * size);
+
+        TransmissionCache restarted = new TransmissionCache(0, directory, 2 * size);
+        check("disk: restart picks up both files", restarted.getStats().getDiskEntries() == 2);
+        same = play(restarted, images, rendered, 2);
+        Thread.sleep(20);
+        same &= play(restarted, images, rendered, 0);
+        stats = restarted.getStats();
+        check("disk: replayed after restart " + stats, same && stats.getDiskHits() == 2 && stats.getMisses() == 0);
+
+        TransmissionCache smaller = new TransmissionCache(0, directory, size);
+        check("disk: smaller restart keeps one file", smaller.getStats().getDiskEntries() == 1 && files(directory) == 1);
+        play(smaller, images, rendered, 0);
+        check("disk: the most recently used one " + smaller.getStats(), smaller.getStats().getDiskHits() == 1);
+
+        for (File file : directory.toFile().listFiles()) Files.delete(file.toPath());
+        check("disk: deleted file rendered again", play(smaller, images, rendered, 0) && smaller.getStats().getMisses() == 1);
+    }
+
+    // A file is remembered by path, size and modification time; replacing it renders the new image
+    private static void imageFiles(BufferedImage[] images, byte[][] rendered, long size, Path dir) throws Exception {
+        TransmissionCache cache = new TransmissionCache(3 * size);
+        File file = dir.resolve("image.png").toFile();
+        ImageIO.write(images[0], "png", file);
+        check("file: first transmission", play(cache, file, rendered[0]));
+        check("file: repeated transmission", play(cache, file, rendered[0]) && cache.getStats().getHits() == 1);
+        ImageIO.write(images[1], "png", file);
+        file.setLastModified(file.lastModified() + 2000);
+        check("file: replaced image rendered", play(cache, file, rendered[1]) && cache.getStats().getMisses() == 2);
+    }
+
+    private static boolean play(TransmissionCache cache, BufferedImage[] images, byte[][] rendered, int i) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.transmit(images[i], MODE, RATE, PcmSink.of(out));
+        return Arrays.equals(out.toByteArray(), rendered[i]);
+    }
+
+    private static boolean play(TransmissionCache cache, File file, byte[] rendered) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.transmit(file, MODE, RATE, PcmSink.of(out));
+        return Arrays.equals(out.toByteArray(), rendered);
+    }
+
+    private static void check(String what, boolean ok) {
+        System.out.println((ok ? "ok   " : "FAIL ") + what);
+        if (!ok) failures++;
+    }
+
+    private static int files(Path directory) {
+        return directory.toFile().list((d, name) -> name.endsWith(".pcm")).length;
+    }
+
+    // Distinct gradient per index
+    private static BufferedImage image(int index) {
+        BufferedImage img = new BufferedImage(MODE.getWidth(), MODE.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, ((x * (index + 1)) & 0xFF) << 16 | (y & 0xFF) << 8 | (index * 80));
+            }
+        }
+        return img;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,210 @@
+package tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import src.com.sstv.WavReader;
+
+/**
+ * Headless checks of {@link WavReader}: chunk layouts, RF64, WAVE_FORMAT_EXTENSIBLE and windows across the
+ * mapped regions of a file beyond 2 GB (written sparse, so it takes little disk space).
+ * <p>
+ * Run after {@code mvn test-compile} with
+ * {@code java -cp target/classes:target/test-classes tests.WavReaderCheck}; exits with status 1 on a failure.
+ */
+public class WavReaderCheck {
+    private static final int RATE = 8000;
+    private static final int FRAMES = 2000;
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("wavreader");
+        try {
+            plainRiff(dir);
+            oddChunkBeforeData(dir);
+            largeChunkBeforeFormat(dir);
+            extensibleStereo(dir);
+            rf64(dir);
+            unfinishedFile(dir);
+            rejected(dir);
+            regions(dir);
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+        System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    private static void plainRiff(Path dir) throws Exception {
+        Path file = write(dir, "plain.wav", riff("RIFF", fmt(1, 1, 16, 16), data(FRAMES, 1)));
+        try (WavReader reader = WavReader.open(file)) {
+            check("plain RIFF format", reader.getSampleRate() == RATE && reader.getChannels() == 1);
+            check("plain RIFF frames", reader.getFrameCount() == FRAMES);
+            check("plain RIFF samples", ramp(reader.window(0, FRAMES), 0, FRAMES));
+        }
+    }
+
+    // Chunks are padded to an even length; a reader skipping by the bare size lands inside the pad byte
+    private static void oddChunkBeforeData(Path dir) throws Exception {
+        Path file = write(dir, "odd.wav", riff("RIFF", fmt(1, 1, 16, 16), chunk("LIST", 3), data(FRAMES, 1)));
+        try (WavReader reader = WavReader.open(file)) {
+            check("odd-sized chunk skipped with its pad byte", reader.getFrameCount() == FRAMES
+                && ramp(reader.window(0, FRAMES), 0, FRAMES));
+        }
+    }
+
+    // Metadata ahead of the format chunk, well past the first 64 KiB
+    private static void largeChunkBeforeFormat(Path dir) throws Exception {
+        Path file = write(dir, "large.wav", riff("RIFF", chunk("LIST", 300_000), fmt(1, 1, 16, 18), data(FRAMES, 1)));
+        try (WavReader reader = WavReader.open(file)) {
+            check("format found after a 300 kB chunk", reader.getSampleRate() == RATE && reader.getFrameCount() == FRAMES
+                && ramp(reader.window(0, FRAMES), 0, FRAMES));
+        }
+    }
+
+    private static void extensibleStereo(Path dir) throws Exception {
+        Path file = write(dir, "extensible.wav", riff("RIFF", fmt(0xFFFE, 2, 16, 40), data(FRAMES, 2)));
+        try (WavReader reader = WavReader.open(file)) {
+            check("WAVE_FORMAT_EXTENSIBLE stereo", reader.getChannels() == 2 && reader.getFrameCount() == FRAMES
+                && ramp(reader.window(10, 100), 20, 200));
+        }
+    }
+
+    // RF64 keeps the real data size in ds64 and 0xFFFFFFFF in the data chunk
+    private static void rf64(Path dir) throws Exception {
+        ByteBuffer ds64 = chunk("ds64", 28);
+        ds64.putLong(8, 0).putLong(16, 2L * FRAMES);
+        ByteBuffer data = data(FRAMES, 1);
+        data.putInt(4, -1);
+        Path file = write(dir, "rf64.wav", riff("RF64", ds64, fmt(1, 1, 16, 16), data));
+        try (WavReader reader = WavReader.open(file)) {
+            check("RF64 size from ds64", reader.getFrameCount() == FRAMES && ramp(reader.window(0, FRAMES), 0, FRAMES));
+        }
+    }
+
+    // A recording still being written declares more data than the file holds
+    private static void unfinishedFile(Path dir) throws Exception {
+        ByteBuffer data = data(FRAMES, 1);
+        data.putInt(4, 1 << 30);
+        Path file = write(dir, "unfinished.wav", riff("RIFF", fmt(1, 1, 16, 16), data));
+        try (WavReader reader = WavReader.open(file)) {
+            check("unfinished data chunk clamped to the file", reader.getFrameCount() == FRAMES);
+        }
+    }
+
+    private static void rejected(Path dir) throws Exception {
+        check("8-bit PCM rejected", !opens(write(dir, "8bit.wav", riff("RIFF", fmt(1, 1, 8, 16), data(FRAMES, 1)))));
+        check("float PCM rejected", !opens(write(dir, "float.wav", riff("RIFF", fmt(3, 1, 16, 16), data(FRAMES, 1)))));
+        check("missing data chunk rejected", !opens(write(dir, "nodata.wav", riff("RIFF", fmt(1, 1, 16, 16)))));
+        check("headerless PCM rejected", !opens(write(dir, "raw.pcm", data(FRAMES, 1))));
+        try (WavReader reader = WavReader.open(write(dir, "bounds.wav", riff("RIFF", fmt(1, 2, 16, 16), data(FRAMES, 2))))) {
+            check("window past the end rejected", !fits(reader, FRAMES - 10, 11));
+            check("window longer than an int of bytes rejected", !fits(reader, 0, Integer.MAX_VALUE / 2));
+            check("last window accepted", fits(reader, FRAMES - 10, 10));
+        }
+    }
+
+    // Windows on both sides of every region boundary of a 2.3 GB recording, and across them
+    private static void regions(Path dir) throws Exception {
+        Path file = dir.resolve("large.pcm");
+        long size = 2_300_000_000L;
+        long[] marks = { 0, (1L << 30) - 64, (2L << 30) - 64, size - 128 };
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+            for (long at : marks) {
+                ByteBuffer mark = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < 64; i++) mark.putShort(value(at / 2 + i));
+                channel.write(mark.flip(), at);
+            }
+        }
+        try (WavReader reader = WavReader.openRaw(file, RATE, 1)) {
+            check("frames of a 2.3 GB file", reader.getFrameCount() == size / 2);
+            boolean same = true;
+            for (long at : marks) {
+                ShortBuffer window = reader.window(at / 2, 64);
+                for (int i = 0; i < 64; i++) same &= window.get(i) == value(at / 2 + i);
+            }
+            check("windows across region boundaries", same);
+            int largest = WavReader.MAX_WINDOW_BYTES / 2;
+            check("largest window at the end", reader.window(reader.getFrameCount() - largest, largest).remaining() == largest);
+        }
+    }
+
+    private static void check(String what, boolean ok) {
+        System.out.println((ok ? "ok   " : "FAIL ") + what);
+        if (!ok) failures++;
+    }
+
+    private static short value(long frame) {
+        return (short) (frame & 0x7FFF);
+    }
+
+    private static boolean opens(Path file) throws IOException {
+        try (WavReader reader = WavReader.open(file)) {
+            return true;
+        } catch (UnsupportedAudioFileException e) {
+            return false;
+        }
+    }
+
+    private static boolean fits(WavReader reader, long frame, int frames) {
+        try {
+            reader.window(frame, frames);
+            return true;
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    // Samples counting up from first
+    private static boolean ramp(ShortBuffer samples, int first, int count) {
+        if (samples.remaining() != count) return false;
+        for (int i = 0; i < count; i++) {
+            if (samples.get(i) != (short) (first + i)) return false;
+        }
+        return true;
+    }
+
+    private static ByteBuffer riff(String id, ByteBuffer... chunks) {
+        int length = 12;
+        for (ByteBuffer chunk : chunks) length += chunk.capacity();
+        ByteBuffer file = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        file.put(id.getBytes()).putInt(length - 8).put("WAVE".getBytes());
+        for (ByteBuffer chunk : chunks) file.put(chunk.array());
+        return file;
+    }
+
+    // Chunk with a zeroed body, padded to an even length
+    private static ByteBuffer chunk(String id, int size) {
+        ByteBuffer chunk = ByteBuffer.allocate(8 + size + (size & 1)).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.put(id.getBytes()).putInt(size);
+        return chunk;
+    }
+
+    private static ByteBuffer fmt(int format, int channels, int bits, int size) {
+        ByteBuffer chunk = chunk("fmt ", size);
+        chunk.putShort((short) format).putShort((short) channels).putInt(RATE).putInt(RATE * channels * bits / 8)
+            .putShort((short) (channels * bits / 8)).putShort((short) bits);
+        if (format == 0xFFFE) chunk.putShort(32, (short) 1); // Sub-format GUID starts with the PCM format tag
+        return chunk;
+    }
+
+    // Interleaved samples counting up from 0
+    private static ByteBuffer data(int frames, int channels) {
+        ByteBuffer chunk = chunk("data", 2 * frames * channels);
+        for (int i = 0; i < frames * channels; i++) chunk.putShort((short) i);
+        return chunk;
+    }
+
+    private static Path write(Path dir, String name, ByteBuffer contents) throws IOException {
+        return Files.write(dir.resolve(name), contents.array());
+    }
+}